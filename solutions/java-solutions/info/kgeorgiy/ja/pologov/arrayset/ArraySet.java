@@ -1,115 +1,560 @@
 package info.kgeorgiy.ja.pologov.arrayset;
 
 import java.util.*;
+import java.util.function.Consumer;
 
+/**
+ * Immutable navigable set backed by a sorted array.
+ * <p>
+ * All views, including descending ones, are index ranges over the array of the original set:
+ * they are created in O(log n) without copying, and views of views do not nest.
+ */
 // :fixed: "удалить" методы add, remove
-public class ArraySet<E> extends AbstractSet<E> implements SortedSet<E> {
-    private final List<E> data;
+public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private final E[] data;
+    private final int from;
+    private final int to;
     private final Comparator<? super E> comparator;
+    private final boolean reversed;
 
-    public ArraySet(List<E> data, Comparator<? super E> comparator) {
+    private ArraySet(E[] data, int from, int to, Comparator<? super E> comparator, boolean reversed) {
         this.data = data;
+        this.from = from;
+        this.to = to;
         this.comparator = comparator;
+        this.reversed = reversed;
     }
 
     public ArraySet() {
-        this(Collections.emptyList(), null);
+        this((Comparator<? super E>) null);
     }
 
-    public ArraySet(Collection<E> collection, Comparator<? super E> comparator) {
+    public ArraySet(Collection<? extends E> collection, Comparator<? super E> comparator) {
         // :fixed: использовать TreeSet
         this.comparator = comparator;
-        TreeSet<E> tmp = new TreeSet<>(comparator);
-        tmp.addAll(collection);
-        data = new ArrayList<>(tmp);
+        this.data = sortedDistinct(collection);
+        this.from = 0;
+        this.to = data.length;
+        this.reversed = false;
+    }
+
+    /**
+     * Creates set over first {@code size} elements of an array, that are already sorted and distinct.
+     * Order is trusted and not checked.
+     */
+    static <E> ArraySet<E> ofSorted(E[] sorted, int size, Comparator<? super E> comparator) {
+        E[] data = size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        return new ArraySet<>(data, 0, data.length, comparator, false);
     }
 
-    public ArraySet(Collection<E> collection) {
+    public ArraySet(Collection<? extends E> collection) {
         this(collection, null);
     }
 
+    @SuppressWarnings("unchecked")
     public ArraySet(Comparator<? super E> comparator) {
-        this(new ArrayList<>(), comparator);
+        this((E[]) new Object[0], 0, 0, comparator, false);
     }
 
     @Override
     public Iterator<E> iterator() {
-        return data.iterator();
+        return new Iterator<>() {
+            private int index = reversed ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return from <= index && index < to;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                E element = data[index];
+                index += reversed ? -1 : 1;
+                return element;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new ArraySpliterator(0, size());
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet() {
+        return new ArraySet<>(data, from, to, comparator, !reversed);
     }
 
     @Override
     public int size() {
-        return data.size();
+        return to - from;
     }
 
     @Override
     public Comparator<? super E> comparator() {
-        return comparator;
+        return reversed ? Collections.reverseOrder(comparator) : comparator;
     }
 
     @Override
-    public SortedSet<E> subSet(E fromElement, E toElement) {
-        boolean check;
-        if (comparator != null) {
-            check = comparator.compare(fromElement, toElement) > 0;
-        } else {
-            check = fromElement == toElement;
-        }
-        if (check) {
-            throw new IllegalArgumentException("fromElement > subset");
-        }
-        int begin = Collections.binarySearch(data, (E) fromElement, comparator);
-        int end = Collections.binarySearch(data, (E) toElement, comparator);
-        if (begin < 0) {
-            begin = -begin - 1;
-        }
-        if (end < 0) {
-            end = -end - 1;
-        }
-        if (begin < end)
-            return new ArraySet<E>(data.subList(begin, end), comparator);
-        return new ArraySet<E>(comparator);
+    public E lower(E e) {
+        return reversed ? at(upperBound(e)) : at(lowerBound(e) - 1);
     }
 
     @Override
-    public SortedSet<E> headSet(Object toElement) {
-        @SuppressWarnings("unchecked") int end = Collections.binarySearch(data, (E) toElement, comparator);
-        if (end < 0) {
-            end = -end - 1;
-        }
-        if (!data.isEmpty())
-            return new ArraySet<E>(data.subList(0, end), comparator);
-        return new ArraySet<E>(comparator);
+    public E floor(E e) {
+        return reversed ? at(lowerBound(e)) : at(upperBound(e) - 1);
     }
 
     @Override
-    public SortedSet<E> tailSet(Object fromElement) {
-        @SuppressWarnings("unchecked") int begin = Collections.binarySearch(data, (E) fromElement, comparator);
-        if (begin < 0) {
-            begin = -begin - 1;
+    public E ceiling(E e) {
+        return reversed ? at(upperBound(e) - 1) : at(lowerBound(e));
+    }
+
+    @Override
+    public E higher(E e) {
+        return reversed ? at(lowerBound(e) - 1) : at(upperBound(e));
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        int cmp = compare(fromElement, toElement);
+        if (reversed ? cmp < 0 : cmp > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
         }
-        if (!data.isEmpty())
-            return new ArraySet<E>(data.subList(begin, data.size()), comparator);
-        return new ArraySet<E>(comparator);
+        return reversed
+                ? view(begin(toElement, toInclusive), end(fromElement, fromInclusive))
+                : view(begin(fromElement, fromInclusive), end(toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+        return reversed ? view(begin(toElement, inclusive), to) : view(from, end(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+        return reversed ? view(from, end(fromElement, inclusive)) : view(begin(fromElement, inclusive), to);
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return tailSet(fromElement, true);
     }
 
     @Override
     public E first() {
-        if (data.isEmpty())
+        if (isEmpty())
             throw new NoSuchElementException();
-        return data.get(0);
+        return reversed ? data[to - 1] : data[from];
     }
 
     @Override
     public E last() {
-        if (data.isEmpty())
+        if (isEmpty())
             throw new NoSuchElementException();
-        return data.get(data.size() - 1);
+        return reversed ? data[from] : data[to - 1];
     }
 
+    @Override
     @SuppressWarnings("unchecked")
     public boolean contains(Object o) {
-        return Collections.binarySearch(data,  (E) o, comparator) >= 0;
+        return search((E) o) >= 0;
+    }
+
+    /**
+     * Copies elements to an array, sorts it unless it is already sorted
+     * and removes duplicates, keeping the first of equal elements as {@link TreeSet} does.
+     */
+    @SuppressWarnings("unchecked")
+    private E[] sortedDistinct(Collection<? extends E> collection) {
+        E[] elements = (E[]) collection.toArray();
+        int i = 1;
+        while (i < elements.length && compare(elements[i - 1], elements[i]) < 0) {
+            i++;
+        }
+        if (i >= elements.length) {
+            if (elements.length == 1) {
+                // Rejects incomparable single element, as TreeSet does
+                compare(elements[0], elements[0]);
+            }
+            return elements;
+        }
+        // Both sorts are stable, so the first of equal elements stays first
+        if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(elements, comparator);
+        } else {
+            Arrays.sort(elements, comparator);
+        }
+        int size = 1;
+        for (int j = 1; j < elements.length; j++) {
+            if (compare(elements[size - 1], elements[j]) != 0) {
+                elements[size++] = elements[j];
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * Returns number of elements less than {@code e} in iteration order, that is the position of {@code e}
+     * if it is contained in the set, or its insertion point otherwise.
+     *
+     * @param e element to rank.
+     * @return number of elements before {@code e}.
+     */
+    public int rank(E e) {
+        return rank(e, false);
+    }
+
+    /**
+     * Returns element at given position in iteration order.
+     *
+     * @param k position, starting from {@code 0}.
+     * @return k-th element.
+     * @throws IndexOutOfBoundsException if {@code k} is not in {@code [0, size())}.
+     */
+    public E select(int k) {
+        Objects.checkIndex(k, size());
+        return get(k);
+    }
+
+    /**
+     * Returns number of elements from {@code fromElement} inclusive to {@code toElement} exclusive,
+     * that is {@code subSet(fromElement, toElement).size()} without creating the view.
+     *
+     * @param fromElement low endpoint, inclusive.
+     * @param toElement   high endpoint, exclusive.
+     * @return number of elements in the range.
+     * @throws IllegalArgumentException if {@code fromElement} is greater than {@code toElement}.
+     */
+    public int countInRange(E fromElement, E toElement) {
+        return countInRange(fromElement, true, toElement, false);
+    }
+
+    /**
+     * Returns {@code subSet(fromElement, fromInclusive, toElement, toInclusive).size()} without creating the view.
+     *
+     * @param fromElement   low endpoint.
+     * @param fromInclusive whether the low endpoint is counted.
+     * @param toElement     high endpoint.
+     * @param toInclusive   whether the high endpoint is counted.
+     * @return number of elements in the range.
+     * @throws IllegalArgumentException if {@code fromElement} is greater than {@code toElement}.
+     */
+    public int countInRange(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        if (compareInView(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return Math.max(0, rank(toElement, toInclusive) - rank(fromElement, !fromInclusive));
+    }
+
+    /**
+     * Returns number of elements less than {@code e}, or not greater than it if {@code inclusive}, in iteration order.
+     */
+    private int rank(E e, boolean inclusive) {
+        if (reversed) {
+            return to - (inclusive ? lowerBound(e) : upperBound(e));
+        }
+        return (inclusive ? upperBound(e) : lowerBound(e)) - from;
+    }
+
+    /**
+     * Returns set of elements contained in this set or in the collection.
+     * If the collection is an {@code ArraySet} with the same {@link #comparator()}, sets are merged in linear time.
+     *
+     * @param other collection to unite with.
+     * @return new set with the comparator of this set.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<E> union(Collection<? extends E> other) {
+        if (!isCompatible(other)) {
+            List<E> elements = new ArrayList<>(this);
+            elements.addAll(other);
+            return new ArraySet<>(elements, comparator());
+        }
+        ArraySet<E> that = (ArraySet<E>) other;
+        E[] result = (E[]) new Object[size() + that.size()];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size() && j < that.size()) {
+            int cmp = compareInView(get(i), that.get(j));
+            if (cmp <= 0) {
+                result[size++] = get(i++);
+                if (cmp == 0) {
+                    j++;
+                }
+            } else {
+                result[size++] = that.get(j++);
+            }
+        }
+        while (i < size()) {
+            result[size++] = get(i++);
+        }
+        while (j < that.size()) {
+            result[size++] = that.get(j++);
+        }
+        return ofSorted(result, size, comparator());
+    }
+
+    /**
+     * Returns set of elements contained both in this set and in the collection.
+     * If the collection is an {@code ArraySet} with the same {@link #comparator()}, elements of the smaller set
+     * are searched in the larger one by galloping, in O(m log(n / m)) comparisons.
+     *
+     * @param other collection to intersect with.
+     * @return new set with the comparator and elements of this set.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<E> intersect(Collection<?> other) {
+        if (!isCompatible(other)) {
+            // Contains of the collection may be looser than equality, so any element of this set may match
+            E[] result = (E[]) new Object[size()];
+            int size = 0;
+            for (int i = 0; i < size(); i++) {
+                if (other.contains(get(i))) {
+                    result[size++] = get(i);
+                }
+            }
+            return ofSorted(result, size, comparator());
+        }
+        E[] result = (E[]) new Object[Math.min(size(), other.size())];
+        int size = 0;
+        ArraySet<E> that = (ArraySet<E>) other;
+        boolean thisSmaller = size() <= that.size();
+        ArraySet<E> small = thisSmaller ? this : that;
+        ArraySet<E> large = thisSmaller ? that : this;
+        int j = 0;
+        for (int i = 0; i < small.size() && j < large.size(); i++) {
+            j = large.gallop(j, small.get(i));
+            if (j < large.size() && compareInView(large.get(j), small.get(i)) == 0) {
+                result[size++] = thisSmaller ? small.get(i) : large.get(j);
+            }
+        }
+        return ofSorted(result, size, comparator());
+    }
+
+    /**
+     * Returns set of elements of this set not contained in the collection.
+     * If the collection is an {@code ArraySet} with the same {@link #comparator()}, sets are merged
+     * with galloping over the collection.
+     *
+     * @param other collection of elements to exclude.
+     * @return new set with the comparator of this set.
+     */
+    @SuppressWarnings("unchecked")
+    public ArraySet<E> difference(Collection<?> other) {
+        E[] result = (E[]) new Object[size()];
+        int size = 0;
+        if (!isCompatible(other)) {
+            for (int i = 0; i < size(); i++) {
+                if (!other.contains(get(i))) {
+                    result[size++] = get(i);
+                }
+            }
+            return ofSorted(result, size, comparator());
+        }
+        ArraySet<E> that = (ArraySet<E>) other;
+        int j = 0;
+        for (int i = 0; i < size(); i++) {
+            j = that.gallop(j, get(i));
+            if (j == that.size() || compareInView(that.get(j), get(i)) != 0) {
+                result[size++] = get(i);
+            }
+        }
+        return ofSorted(result, size, comparator());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsAll(Collection<?> c) {
+        if (!isCompatible(c)) {
+            return super.containsAll(c);
+        }
+        ArraySet<E> that = (ArraySet<E>) c;
+        int j = 0;
+        for (int i = 0; i < that.size(); i++) {
+            j = gallop(j, that.get(i));
+            if (j == size() || compareInView(get(j), that.get(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isCompatible(Collection<?> other) {
+        return other instanceof ArraySet && Objects.equals(comparator(), ((ArraySet<?>) other).comparator());
+    }
+
+    /**
+     * Returns element at given position in iteration order.
+     */
+    private E get(int index) {
+        return reversed ? data[to - 1 - index] : data[from + index];
+    }
+
+    private int compareInView(E a, E b) {
+        return reversed ? compare(b, a) : compare(a, b);
+    }
+
+    /**
+     * Returns first position not less than {@code start} with element not less than {@code e} in iteration order,
+     * probing positions {@code start + 2^k} first, so short distances take few comparisons.
+     */
+    private int gallop(int start, E e) {
+        if (start >= size() || compareInView(get(start), e) >= 0) {
+            return start;
+        }
+        int low = start;
+        int step = 1;
+        while (start + step < size() && compareInView(get(start + step), e) < 0) {
+            low = start + step;
+            step *= 2;
+        }
+        int high = Math.min(start + step, size());
+        // get(low) < e, get(high) >= e or high == size()
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (compareInView(get(mid), e) < 0) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Spliterator over positions {@code [index, fence)} in iteration order, split exactly in halves.
+     */
+    private class ArraySpliterator implements Spliterator<E> {
+        private int index;
+        private final int fence;
+
+        ArraySpliterator(int index, int fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            if (index >= fence) {
+                return false;
+            }
+            action.accept(get(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            for (; index < fence; index++) {
+                action.accept(get(index));
+            }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            Spliterator<E> prefix = new ArraySpliterator(index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            return comparator();
+        }
+    }
+
+    private ArraySet<E> view(int begin, int end) {
+        return new ArraySet<>(data, begin, Math.max(begin, end), comparator, reversed);
+    }
+
+    /**
+     * Returns first array index of a view starting at {@code e}.
+     */
+    private int begin(E e, boolean inclusive) {
+        return inclusive ? lowerBound(e) : upperBound(e);
+    }
+
+    /**
+     * Returns array index after the last element of a view ending at {@code e}.
+     */
+    private int end(E e, boolean inclusive) {
+        return inclusive ? upperBound(e) : lowerBound(e);
+    }
+
+    private E at(int index) {
+        return from <= index && index < to ? data[index] : null;
+    }
+
+    private int search(E e) {
+        return Arrays.binarySearch(data, from, to, e, comparator);
+    }
+
+    /**
+     * Returns index of the first element not less than {@code e} in ascending order.
+     */
+    private int lowerBound(E e) {
+        int index = search(e);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns index of the first element greater than {@code e} in ascending order.
+     */
+    private int upperBound(E e) {
+        int index = search(e);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException();
     }
 
     @Override
@@ -0,0 +1,227 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Compact binary snapshots of {@link ArraySet}s of {@link Integer}, {@link Long} or {@link String}
+ * in natural or reverse natural order. The comparator is restored as it was: {@code null},
+ * {@link Comparator#naturalOrder()} or {@link Collections#reverseOrder()}, so sets read back stay compatible
+ * with the sets they were written from.
+ * <p>
+ * Format: {@code MAGIC VERSION <kind> <order> <count> <elements>}, where magic is a big-endian int,
+ * version, kind and order are bytes, and all other numbers are LEB128 varints.
+ * Elements are written in iteration order:
+ * <ul>
+ *     <li>numbers as zigzag-encoded differences from the previous element, starting from {@code 0};</li>
+ *     <li>strings front-coded as in {@link FrontCoding}, the first string is written in full.</li>
+ * </ul>
+ * Snapshots are written by the set, so reading trusts their order and neither sorts nor compares elements.
+ */
+public class ArraySetSnapshot {
+    private static final int MAGIC = 0x41534554;
+    private static final int VERSION = 1;
+
+    private static final int EMPTY = 0;
+    private static final int INT = 1;
+    private static final int LONG = 2;
+    private static final int STRING = 3;
+
+    private static final int NATURAL = 0;
+    private static final int REVERSED = 1;
+    private static final int NATURAL_COMPARATOR = 2;
+
+    private ArraySetSnapshot() {
+    }
+
+    /**
+     * Writes snapshot of the set with a single bulk write.
+     *
+     * @param set set of {@link Integer}, {@link Long} or {@link String}
+     *            ordered by {@code null}, {@link Comparator#naturalOrder()} or {@link Collections#reverseOrder()} comparator.
+     * @param out stream to write to, not closed.
+     * @throws IOException              if the stream can't be written.
+     * @throws IllegalArgumentException if elements or comparator are not supported.
+     */
+    public static void write(ArraySet<?> set, OutputStream out) throws IOException {
+        Buffer buffer = new Buffer();
+        buffer.writeInt(MAGIC);
+        buffer.write(VERSION);
+        int kind = kind(set);
+        buffer.write(kind);
+        buffer.write(order(set.comparator()));
+        FrontCoding.writeVarLong(buffer, set.size());
+        switch (kind) {
+            case INT, LONG -> {
+                long previous = 0;
+                for (Object e : set) {
+                    long value = ((Number) e).longValue();
+                    long delta = value - previous;
+                    FrontCoding.writeVarLong(buffer, delta << 1 ^ delta >> 63);
+                    previous = value;
+                }
+            }
+            case STRING -> {
+                String previous = "";
+                for (Object e : set) {
+                    String s = (String) e;
+                    FrontCoding.writeEntry(buffer, previous, s);
+                    previous = s;
+                }
+            }
+            default -> {
+            }
+        }
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Reads snapshot from the rest of the stream with a single bulk read.
+     *
+     * @param in stream to read, not closed.
+     * @return set with elements and order of the snapshot.
+     * @throws IOException if the stream can't be read or the snapshot is invalid.
+     */
+    public static <E> ArraySet<E> read(InputStream in) throws IOException {
+        return read(ByteBuffer.wrap(in.readAllBytes()));
+    }
+
+    /**
+     * Reads snapshot from a memory-mapped file.
+     *
+     * @param file snapshot file.
+     * @return set with elements and order of the snapshot.
+     * @throws IOException if the file can't be read or the snapshot is invalid.
+     */
+    public static <E> ArraySet<E> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads snapshot from the buffer, starting at its position.
+     *
+     * @param buffer buffer to read.
+     * @return set with elements and order of the snapshot.
+     * @throws IOException if the snapshot is invalid.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> ArraySet<E> read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not an ArraySet snapshot");
+            }
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("unsupported ArraySet snapshot version " + version);
+            }
+            int kind = buffer.get();
+            int order = buffer.get();
+            if (order != NATURAL && order != REVERSED && order != NATURAL_COMPARATOR) {
+                throw new IOException("invalid order " + order);
+            }
+            long count = FrontCoding.readVarLong(buffer);
+            if (count < 0 || count > buffer.remaining() || kind == EMPTY && count != 0) {
+                throw new IOException("invalid element count " + count);
+            }
+            Object[] elements = new Object[(int) count];
+            switch (kind) {
+                case EMPTY -> {
+                }
+                case INT, LONG -> {
+                    long previous = 0;
+                    for (int i = 0; i < elements.length; i++) {
+                        long zigzag = FrontCoding.readVarLong(buffer);
+                        previous += zigzag >>> 1 ^ -(zigzag & 1);
+                        if (kind == INT && (int) previous != previous) {
+                            throw new IOException("int element out of range " + previous);
+                        }
+                        elements[i] = kind == INT ? (Object) (int) previous : (Object) previous;
+                    }
+                }
+                case STRING -> {
+                    char[] chars = new char[16];
+                    for (int i = 0; i < elements.length; i++) {
+                        long prefixLength = FrontCoding.readVarLong(buffer);
+                        long suffixLength = FrontCoding.readVarLong(buffer);
+                        if (prefixLength < 0 || suffixLength < 0 || suffixLength > buffer.remaining() || i == 0 && prefixLength != 0
+                                || i > 0 && prefixLength > ((String) elements[i - 1]).length()) {
+                            throw new IOException("invalid string lengths");
+                        }
+                        int prefix = (int) prefixLength;
+                        int suffix = (int) suffixLength;
+                        if (prefix + suffix > chars.length) {
+                            chars = Arrays.copyOf(chars, Math.max(2 * chars.length, prefix + suffix));
+                        }
+                        for (int j = 0; j < suffix; j++) {
+                            chars[prefix + j] = FrontCoding.readChar(buffer);
+                        }
+                        elements[i] = new String(chars, 0, prefix + suffix);
+                    }
+                }
+                default -> throw new IOException("unsupported element kind " + kind);
+            }
+            Comparator<E> comparator = switch (order) {
+                case REVERSED -> Collections.reverseOrder();
+                case NATURAL_COMPARATOR -> (Comparator<E>) Comparator.naturalOrder();
+                default -> null;
+            };
+            return ArraySet.ofSorted((E[]) elements, elements.length, comparator);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated ArraySet snapshot", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static int kind(ArraySet<?> set) {
+        if (set.isEmpty()) {
+            return EMPTY;
+        }
+        Class<?> type = set.first().getClass();
+        int kind = type == Integer.class ? INT : type == Long.class ? LONG : type == String.class ? STRING : -1;
+        if (kind < 0) {
+            throw new IllegalArgumentException("unsupported element type " + type.getName());
+        }
+        for (Object e : set) {
+            if (e == null || e.getClass() != type) {
+                throw new IllegalArgumentException("elements must all be of type " + type.getName());
+            }
+        }
+        return kind;
+    }
+
+    private static int order(Comparator<?> comparator) {
+        if (comparator == null) {
+            return NATURAL;
+        } else if (comparator.equals(Comparator.naturalOrder())) {
+            return NATURAL_COMPARATOR;
+        } else if (comparator.equals(Collections.reverseOrder())) {
+            return REVERSED;
+        }
+        throw new IllegalArgumentException("only natural and reverse natural orders are supported");
+    }
+
+    /**
+     * Output buffer written to the stream at once.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+    }
+}
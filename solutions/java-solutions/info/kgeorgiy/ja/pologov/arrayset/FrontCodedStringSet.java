@@ -0,0 +1,310 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Immutable sorted set of strings in natural order, stored front-coded in a single {@code byte[]}.
+ * <p>
+ * Strings are split into blocks of {@code blockSize} and front-coded as in {@link FrontCoding}
+ * within a block, so the first string of a block is stored in full. Any string, including one with unpaired
+ * surrogates, is kept as is.
+ * <p>
+ * Lookups binary-search the first strings of blocks and then scan one block linearly, comparing
+ * the encoded chars with the key as {@link String#compareTo} does. Only the length of the common prefix with the key
+ * is tracked, so lookups decode no strings and allocate no char buffers. Views are index ranges over the same bytes.
+ */
+public class FrontCodedStringSet extends AbstractSet<String> implements SortedSet<String> {
+    static final int DEFAULT_BLOCK_SIZE = 16;
+
+    private final byte[] bytes;
+    /**
+     * Offsets of the first entries of blocks.
+     */
+    private final int[] blocks;
+    private final int blockSize;
+    /**
+     * Number of strings in the underlying array.
+     */
+    private final int total;
+    private final int from;
+    private final int to;
+
+    private FrontCodedStringSet(byte[] bytes, int[] blocks, int blockSize, int total, int from, int to) {
+        this.bytes = bytes;
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+        this.total = total;
+        this.from = from;
+        this.to = to;
+    }
+
+    public FrontCodedStringSet(Collection<String> collection, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        }
+        ArraySet<String> sorted = new ArraySet<>(collection);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blocks = new int[(sorted.size() + blockSize - 1) / blockSize];
+        int index = 0;
+        String previous = "";
+        for (String s : sorted) {
+            if (index % blockSize == 0) {
+                blocks[index / blockSize] = out.size();
+                previous = "";
+            }
+            FrontCoding.writeEntry(out, previous, s);
+            previous = s;
+            index++;
+        }
+        this.bytes = out.toByteArray();
+        this.blocks = blocks;
+        this.blockSize = blockSize;
+        this.total = sorted.size();
+        this.from = 0;
+        this.to = total;
+    }
+
+    public FrontCodedStringSet(Collection<String> collection) {
+        this(collection, DEFAULT_BLOCK_SIZE);
+    }
+
+    public FrontCodedStringSet() {
+        this(Collections.emptyList());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int index = search((String) o);
+        return from <= index && index < to;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        Cursor cursor = new Cursor();
+        cursor.seek(from);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.index < to;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                cursor.decode();
+                return cursor.string();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return null;
+    }
+
+    @Override
+    public SortedSet<String> subSet(String fromElement, String toElement) {
+        if (fromElement.compareTo(toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return view(lowerBound(fromElement), lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<String> headSet(String toElement) {
+        return view(from, lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<String> tailSet(String fromElement) {
+        return view(lowerBound(fromElement), to);
+    }
+
+    @Override
+    public String first() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        return get(from);
+    }
+
+    @Override
+    public String last() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        return get(to - 1);
+    }
+
+    private String get(int index) {
+        Cursor cursor = new Cursor();
+        cursor.seek(index);
+        cursor.decode();
+        return cursor.string();
+    }
+
+    private FrontCodedStringSet view(int begin, int end) {
+        begin = Math.max(from, Math.min(to, begin));
+        end = Math.max(begin, Math.min(to, end));
+        return new FrontCodedStringSet(bytes, blocks, blockSize, total, begin, end);
+    }
+
+    private int lowerBound(String key) {
+        int index = search(key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Searches the whole array regardless of the view bounds.
+     *
+     * @return index of the key, if it is found, or {@code -(insertion point) - 1}.
+     */
+    private int search(String key) {
+        Cursor cursor = new Cursor();
+        // Last block with the first string not greater than the key
+        int low = -1;
+        int high = blocks.length;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            cursor.seekBlock(mid);
+            if (cursor.compareNext(key) <= 0) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < 0) {
+            return -1;
+        }
+        cursor.seekBlock(low);
+        int end = Math.min(cursor.index + blockSize, total);
+        while (cursor.index < end) {
+            int index = cursor.index;
+            int cmp = cursor.compareNext(key);
+            if (cmp == 0) {
+                return index;
+            } else if (cmp > 0) {
+                return -index - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    /**
+     * Sequential reader of entries, either comparing them with a key or decoding them into a growing char buffer.
+     */
+    private class Cursor {
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        private char[] chars;
+        private int length;
+        private int index;
+        /**
+         * Length of the common prefix of the last compared string and the key.
+         */
+        private int common;
+        /**
+         * Sign of comparison of the last compared string with the key.
+         */
+        private int cmp;
+
+        void seekBlock(int block) {
+            buffer.position(blocks[block]);
+            index = block * blockSize;
+            length = 0;
+            common = 0;
+        }
+
+        /**
+         * Positions cursor so that {@link #decode()} decodes the string at given index.
+         */
+        void seek(int target) {
+            if (target >= to) {
+                index = target;
+                return;
+            }
+            seekBlock(target / blockSize);
+            while (index < target) {
+                decode();
+            }
+        }
+
+        /**
+         * Compares next string with the key. Strings are increasing and have exact shared prefixes,
+         * so while they are less than the key, only entries sharing exactly the common prefix
+         * with the previous string need their chars compared.
+         */
+        int compareNext(String key) {
+            int prefix = readVarInt();
+            int suffix = readVarInt();
+            index++;
+            if (prefix != common) {
+                FrontCoding.skipChars(buffer, suffix);
+                if (prefix < common) {
+                    // Char at the prefix is greater than the previous string's one, which equals the key's one
+                    common = prefix;
+                    cmp = 1;
+                }
+                return cmp;
+            }
+            int end = prefix + suffix;
+            for (int i = prefix; i < end; i++) {
+                char c = FrontCoding.readChar(buffer);
+                if (i == key.length() || c != key.charAt(i)) {
+                    FrontCoding.skipChars(buffer, end - i - 1);
+                    common = i;
+                    cmp = i == key.length() ? 1 : c - key.charAt(i);
+                    return cmp;
+                }
+            }
+            common = end;
+            cmp = end - key.length();
+            return cmp;
+        }
+
+        void decode() {
+            int prefix = readVarInt();
+            int suffix = readVarInt();
+            length = prefix + suffix;
+            if (chars == null || chars.length < length) {
+                chars = chars == null ? new char[Math.max(16, length)] : Arrays.copyOf(chars, Math.max(2 * chars.length, length));
+            }
+            for (int i = prefix; i < length; i++) {
+                chars[i] = FrontCoding.readChar(buffer);
+            }
+            index++;
+        }
+
+        String string() {
+            return new String(chars, 0, length);
+        }
+
+        private int readVarInt() {
+            return (int) FrontCoding.readVarLong(buffer);
+        }
+    }
+
+    @Override
+    public boolean add(String e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,96 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Front coding of sorted strings, shared by {@link FrontCodedStringSet} and {@link ArraySetSnapshot}.
+ * <p>
+ * Every entry is {@code <prefix length> <suffix length> <suffix>}, where the prefix is shared with the previous string.
+ * Lengths are counted in chars and written as unsigned LEB128 varints, suffix chars are written one by one
+ * in modified UTF-8 (as in {@link java.io.DataOutput#writeUTF}), so unpaired surrogates are kept as is.
+ */
+final class FrontCoding {
+    private FrontCoding() {
+    }
+
+    /**
+     * Writes entry of the string with the prefix shared with the previous one.
+     */
+    static void writeEntry(ByteArrayOutputStream out, String previous, String s) {
+        int prefix = sharedPrefix(previous, s);
+        writeVarLong(out, prefix);
+        writeVarLong(out, s.length() - prefix);
+        for (int i = prefix; i < s.length(); i++) {
+            writeChar(out, s.charAt(i));
+        }
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int limit = Math.min(a.length(), b.length());
+        int prefix = 0;
+        while (prefix < limit && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return prefix;
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeChar(ByteArrayOutputStream out, char c) {
+        if (c != 0 && c < 0x80) {
+            out.write(c);
+        } else if (c < 0x800) {
+            out.write(0xC0 | c >> 6);
+            out.write(0x80 | c & 0x3F);
+        } else {
+            out.write(0xE0 | c >> 12);
+            out.write(0x80 | c >> 6 & 0x3F);
+            out.write(0x80 | c & 0x3F);
+        }
+    }
+
+    /**
+     * Reads unsigned varint.
+     *
+     * @throws IllegalArgumentException if the varint is longer than 64 bits.
+     */
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint is too long");
+    }
+
+    static char readChar(ByteBuffer buffer) {
+        int b = buffer.get() & 0xFF;
+        if (b < 0x80) {
+            return (char) b;
+        } else if ((b & 0xE0) == 0xC0) {
+            return (char) ((b & 0x1F) << 6 | buffer.get() & 0x3F);
+        } else {
+            int c = (b & 0x0F) << 12 | (buffer.get() & 0x3F) << 6;
+            return (char) (c | buffer.get() & 0x3F);
+        }
+    }
+
+    static void skipChars(ByteBuffer buffer, int count) {
+        int position = buffer.position();
+        for (int i = 0; i < count; i++) {
+            int b = buffer.get(position++) & 0xFF;
+            position += b < 0x80 ? 0 : (b & 0xE0) == 0xC0 ? 1 : 2;
+        }
+        buffer.position(position);
+    }
+}
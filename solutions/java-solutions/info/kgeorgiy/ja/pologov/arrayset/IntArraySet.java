@@ -0,0 +1,191 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code int} values backed by a sorted {@code int[]} without boxing.
+ * <p>
+ * Views returned by {@link #headSet}, {@link #tailSet} and {@link #subSet} share the array
+ * of this set and are created in O(log n).
+ * <p>
+ * Optionally, a {@link LearnedIndex} is built over the array, then lookups search only a small window
+ * around the predicted position.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements SortedSet<Integer> {
+    private final int[] data;
+    private final LearnedIndex index;
+    private final int from;
+    private final int to;
+
+    private IntArraySet(int[] data, LearnedIndex index, int from, int to) {
+        this.data = data;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+    }
+
+    public IntArraySet() {
+        this(new int[0], null, 0, 0);
+    }
+
+    public IntArraySet(int[] values) {
+        this(values, false);
+    }
+
+    /**
+     * Creates set of given values.
+     *
+     * @param values       values in any order, possibly repeated.
+     * @param learnedIndex whether to build {@link LearnedIndex} for lookups.
+     */
+    public IntArraySet(int[] values, boolean learnedIndex) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        int[] data = size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        this.data = data;
+        this.index = learnedIndex ? LearnedIndex.build(i -> data[i], data.length) : null;
+        this.from = 0;
+        this.to = size;
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(collection.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public boolean contains(int value) {
+        return search(value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    public IntArraySet subSet(int fromElement, int toElement) {
+        if (fromElement > toElement) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return view(lowerBound(fromElement), lowerBound(toElement));
+    }
+
+    public IntArraySet headSet(int toElement) {
+        return view(from, lowerBound(toElement));
+    }
+
+    public IntArraySet tailSet(int fromElement) {
+        return view(lowerBound(fromElement), to);
+    }
+
+    @Override
+    public IntArraySet subSet(Integer fromElement, Integer toElement) {
+        return subSet(fromElement.intValue(), toElement.intValue());
+    }
+
+    @Override
+    public IntArraySet headSet(Integer toElement) {
+        return headSet(toElement.intValue());
+    }
+
+    @Override
+    public IntArraySet tailSet(Integer fromElement) {
+        return tailSet(fromElement.intValue());
+    }
+
+    public int firstInt() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return data[from];
+    }
+
+    public int lastInt() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return data[to - 1];
+    }
+
+    @Override
+    public Integer first() {
+        return firstInt();
+    }
+
+    @Override
+    public Integer last() {
+        return lastInt();
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOfRange(data, from, to);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return Arrays.stream(data, from, to).iterator();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public Comparator<? super Integer> comparator() {
+        return null;
+    }
+
+    private IntArraySet view(int begin, int end) {
+        return new IntArraySet(data, index, begin, Math.max(begin, end));
+    }
+
+    /**
+     * Returns index of the first element not less than {@code value}.
+     */
+    private int lowerBound(int value) {
+        int position = search(value);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Searches value in this view as {@link Arrays#binarySearch(int[], int, int, int)} does.
+     */
+    private int search(int value) {
+        if (index == null) {
+            return Arrays.binarySearch(data, from, to, value);
+        }
+        int prediction = index.predict(value);
+        int low = LearnedIndex.low(prediction);
+        int high = LearnedIndex.high(prediction, data.length);
+        int position;
+        if (low > 0 && data[low - 1] >= value || high < data.length && data[high] <= value) {
+            // Value is outside of the window, prediction is off for keys that are not exact doubles
+            position = Arrays.binarySearch(data, value);
+        } else {
+            position = Arrays.binarySearch(data, low, high, value);
+        }
+        if (from <= position && position < to) {
+            return position;
+        }
+        int insertion = position >= 0 ? position : -position - 1;
+        return -Math.max(from, Math.min(to, insertion)) - 1;
+    }
+
+    @Override
+    public boolean add(Integer e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
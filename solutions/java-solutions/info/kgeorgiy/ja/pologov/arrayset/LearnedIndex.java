@@ -0,0 +1,113 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Piecewise-linear model of positions of keys in a sorted array of distinct numbers.
+ * <p>
+ * Segments are built greedily in one pass: a segment is extended while some line through its first point
+ * stays within {@link #ERROR} positions of every point, which is tracked as a shrinking range of slopes.
+ * Smooth data, such as timestamps, needs only a few segments, so the model takes a few KB
+ * and lookups search at most {@code 2 * ERROR + 3} positions of the array instead of the whole array.
+ */
+class LearnedIndex {
+    static final int ERROR = 32;
+
+    private final long[] firstKeys;
+    private final double[] slopes;
+    private final int[] starts;
+
+    private LearnedIndex(long[] firstKeys, double[] slopes, int[] starts) {
+        this.firstKeys = firstKeys;
+        this.slopes = slopes;
+        this.starts = starts;
+    }
+
+    /**
+     * Builds model over keys.
+     *
+     * @param keys key at given position, increasing.
+     * @param size number of keys.
+     * @return model of the keys.
+     */
+    static LearnedIndex build(IntToLongFunction keys, int size) {
+        long[] firstKeys = new long[16];
+        double[] slopes = new double[16];
+        int[] starts = new int[17];
+        int segments = 0;
+        int start = 0;
+        while (start < size) {
+            long first = keys.applyAsLong(start);
+            double low = 0;
+            double high = Double.POSITIVE_INFINITY;
+            int end = start + 1;
+            for (; end < size; end++) {
+                double dx = (double) keys.applyAsLong(end) - first;
+                if (dx == 0) {
+                    // Keys above 2^53 may round to the first key: their prediction is the segment start
+                    if (end - start > ERROR) {
+                        break;
+                    }
+                    continue;
+                }
+                double newLow = Math.max(low, (end - start - ERROR) / dx);
+                double newHigh = Math.min(high, (end - start + ERROR) / dx);
+                if (!(newLow <= newHigh) || Double.isInfinite(newLow)) {
+                    break;
+                }
+                low = newLow;
+                high = newHigh;
+            }
+            if (segments + 1 == starts.length) {
+                firstKeys = Arrays.copyOf(firstKeys, 2 * segments);
+                slopes = Arrays.copyOf(slopes, 2 * segments);
+                starts = Arrays.copyOf(starts, 2 * segments + 1);
+            }
+            firstKeys[segments] = first;
+            slopes[segments] = high == Double.POSITIVE_INFINITY ? 0 : (low + high) / 2;
+            starts[segments] = start;
+            segments++;
+            start = end;
+        }
+        starts[segments] = size;
+        return new LearnedIndex(
+                Arrays.copyOf(firstKeys, segments),
+                Arrays.copyOf(slopes, segments),
+                Arrays.copyOf(starts, segments + 1)
+        );
+    }
+
+    /**
+     * Predicts position of the key, or of the first greater key if it is absent.
+     * Prediction is within {@link #ERROR} + 1 positions of the actual one, if keys are exactly representable as doubles.
+     *
+     * @param key key to look up.
+     * @return predicted position.
+     */
+    int predict(long key) {
+        int segment = Arrays.binarySearch(firstKeys, key);
+        if (segment < 0) {
+            segment = -segment - 2;
+            if (segment < 0) {
+                return 0;
+            }
+        }
+        double offset = ((double) key - firstKeys[segment]) * slopes[segment];
+        return (int) Math.min(starts[segment + 1], starts[segment] + (long) offset);
+    }
+
+    /**
+     * Returns first position of the search window around the prediction.
+     */
+    static int low(int prediction) {
+        return Math.max(0, prediction - ERROR - 1);
+    }
+
+    /**
+     * Returns position after the search window around the prediction.
+     */
+    static int high(int prediction, int size) {
+        return (int) Math.min(size, (long) prediction + ERROR + 2);
+    }
+}
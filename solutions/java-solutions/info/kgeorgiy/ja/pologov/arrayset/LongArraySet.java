@@ -0,0 +1,191 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code long} values backed by a sorted {@code long[]} without boxing.
+ * <p>
+ * Views returned by {@link #headSet}, {@link #tailSet} and {@link #subSet} share the array
+ * of this set and are created in O(log n).
+ * <p>
+ * Optionally, a {@link LearnedIndex} is built over the array, then lookups search only a small window
+ * around the predicted position.
+ */
+public class LongArraySet extends AbstractSet<Long> implements SortedSet<Long> {
+    private final long[] data;
+    private final LearnedIndex index;
+    private final int from;
+    private final int to;
+
+    private LongArraySet(long[] data, LearnedIndex index, int from, int to) {
+        this.data = data;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+    }
+
+    public LongArraySet() {
+        this(new long[0], null, 0, 0);
+    }
+
+    public LongArraySet(long[] values) {
+        this(values, false);
+    }
+
+    /**
+     * Creates set of given values.
+     *
+     * @param values       values in any order, possibly repeated.
+     * @param learnedIndex whether to build {@link LearnedIndex} for lookups.
+     */
+    public LongArraySet(long[] values, boolean learnedIndex) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        long[] data = size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+        this.data = data;
+        this.index = learnedIndex ? LearnedIndex.build(i -> data[i], data.length) : null;
+        this.from = 0;
+        this.to = size;
+    }
+
+    public LongArraySet(Collection<Long> collection) {
+        this(collection.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    public boolean contains(long value) {
+        return search(value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    public LongArraySet subSet(long fromElement, long toElement) {
+        if (fromElement > toElement) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        return view(lowerBound(fromElement), lowerBound(toElement));
+    }
+
+    public LongArraySet headSet(long toElement) {
+        return view(from, lowerBound(toElement));
+    }
+
+    public LongArraySet tailSet(long fromElement) {
+        return view(lowerBound(fromElement), to);
+    }
+
+    @Override
+    public LongArraySet subSet(Long fromElement, Long toElement) {
+        return subSet(fromElement.longValue(), toElement.longValue());
+    }
+
+    @Override
+    public LongArraySet headSet(Long toElement) {
+        return headSet(toElement.longValue());
+    }
+
+    @Override
+    public LongArraySet tailSet(Long fromElement) {
+        return tailSet(fromElement.longValue());
+    }
+
+    public long firstLong() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return data[from];
+    }
+
+    public long lastLong() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return data[to - 1];
+    }
+
+    @Override
+    public Long first() {
+        return firstLong();
+    }
+
+    @Override
+    public Long last() {
+        return lastLong();
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOfRange(data, from, to);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return Arrays.stream(data, from, to).iterator();
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    private LongArraySet view(int begin, int end) {
+        return new LongArraySet(data, index, begin, Math.max(begin, end));
+    }
+
+    /**
+     * Returns index of the first element not less than {@code value}.
+     */
+    private int lowerBound(long value) {
+        int position = search(value);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Searches value in this view as {@link Arrays#binarySearch(long[], int, int, long)} does.
+     */
+    private int search(long value) {
+        if (index == null) {
+            return Arrays.binarySearch(data, from, to, value);
+        }
+        int prediction = index.predict(value);
+        int low = LearnedIndex.low(prediction);
+        int high = LearnedIndex.high(prediction, data.length);
+        int position;
+        if (low > 0 && data[low - 1] >= value || high < data.length && data[high] <= value) {
+            // Value is outside of the window, prediction is off for keys that are not exact doubles
+            position = Arrays.binarySearch(data, value);
+        } else {
+            position = Arrays.binarySearch(data, low, high, value);
+        }
+        if (from <= position && position < to) {
+            return position;
+        }
+        int insertion = position >= 0 ? position : -position - 1;
+        return -Math.max(from, Math.min(to, insertion)) - 1;
+    }
+
+    @Override
+    public boolean add(Long e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,378 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import java.util.*;
+
+/**
+ * Mutable sorted set over immutable {@link ArraySet} snapshots.
+ * <p>
+ * Inserts and deletes are buffered in a small sorted delta, which is merged with the array in a single
+ * linear pass once it reaches the batch size, so a batch costs one copy of the array instead of one per change.
+ * <p>
+ * The merged array, the delta and the size are published together as an immutable state through a volatile field:
+ * writers are serialized and copy the sorted arrays of the delta with one entry inserted or removed, so a change
+ * costs one copy of at most the batch size, readers never lock. Lookups binary search the delta,
+ * iteration merges the array with the delta on the fly, and {@link #snapshot()} returns the latest merged array.
+ */
+public class MutableArraySet<E> extends AbstractSet<E> implements SortedSet<E> {
+    static final int DEFAULT_BATCH_SIZE = 1 << 10;
+
+    private final Comparator<? super E> comparator;
+    private final int batchSize;
+    private volatile State<E> state;
+
+    /**
+     * Merged array, pending changes and the resulting size.
+     */
+    private record State<E>(ArraySet<E> merged, Delta<E> delta, int size) {
+    }
+
+    /**
+     * Pending changes in {@code [from, to)}, sorted by the comparator.
+     * Elements absent from the array are {@code inserted}, removed elements of the array are not.
+     */
+    private record Delta<E>(E[] keys, boolean[] inserted, int from, int to) {
+        @SuppressWarnings("unchecked")
+        static <E> Delta<E> empty() {
+            return new Delta<>((E[]) new Object[0], new boolean[0], 0, 0);
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        boolean isEmpty() {
+            return from == to;
+        }
+
+        Delta<E> range(int from, int to) {
+            return new Delta<>(keys, inserted, from, to);
+        }
+    }
+
+    public MutableArraySet(Collection<? extends E> collection, Comparator<? super E> comparator, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.comparator = comparator;
+        this.batchSize = batchSize;
+        ArraySet<E> merged = new ArraySet<>(collection, comparator);
+        this.state = new State<>(merged, Delta.empty(), merged.size());
+    }
+
+    public MutableArraySet(Collection<? extends E> collection, Comparator<? super E> comparator) {
+        this(collection, comparator, DEFAULT_BATCH_SIZE);
+    }
+
+    public MutableArraySet(Collection<? extends E> collection) {
+        this(collection, null);
+    }
+
+    public MutableArraySet(Comparator<? super E> comparator) {
+        this(Collections.emptyList(), comparator);
+    }
+
+    public MutableArraySet() {
+        this((Comparator<? super E>) null);
+    }
+
+    /**
+     * Returns the latest merged state without locking. Changes not merged yet are not visible in it.
+     *
+     * @return immutable set.
+     */
+    public ArraySet<E> snapshot() {
+        return state.merged();
+    }
+
+    /**
+     * Merges pending changes, so they become visible in {@link #snapshot()}.
+     *
+     * @return immutable set with all changes made so far.
+     */
+    public synchronized ArraySet<E> flush() {
+        State<E> current = state;
+        if (!current.delta().isEmpty()) {
+            ArraySet<E> merged = merge(current.merged(), current.delta(), current.size());
+            state = new State<>(merged, Delta.empty(), current.size());
+        }
+        return state.merged();
+    }
+
+    @Override
+    public synchronized boolean add(E e) {
+        State<E> current = state;
+        if (contains(current, e)) {
+            return false;
+        }
+        change(current, e, true, current.size() + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized boolean remove(Object o) {
+        E e = (E) o;
+        State<E> current = state;
+        if (!contains(current, e)) {
+            return false;
+        }
+        change(current, e, false, current.size() - 1);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        state = new State<>(new ArraySet<>(comparator), Delta.empty(), 0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        return contains(state, (E) o);
+    }
+
+    @Override
+    public int size() {
+        return state.size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        State<E> current = state;
+        Iterator<E> iterator = new MergingIterator<>(
+                current.merged().iterator(), current.delta(), false, comparator);
+        return new Iterator<>() {
+            private E last;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                last = iterator.next();
+                canRemove = true;
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                MutableArraySet.this.remove(last);
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Returns immutable range of the current state, later changes are not reflected in it.
+     * It is a view of the merged array if there are no pending changes and a copy otherwise.
+     */
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        State<E> current = state;
+        SortedSet<E> merged = current.merged().subSet(fromElement, toElement);
+        Delta<E> delta = current.delta();
+        return delta.isEmpty() ? merged : merge(merged, delta.range(bound(delta, fromElement), bound(delta, toElement)));
+    }
+
+    /**
+     * Returns immutable range of the current state, later changes are not reflected in it.
+     * It is a view of the merged array if there are no pending changes and a copy otherwise.
+     */
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        State<E> current = state;
+        SortedSet<E> merged = current.merged().headSet(toElement);
+        Delta<E> delta = current.delta();
+        return delta.isEmpty() ? merged : merge(merged, delta.range(delta.from(), bound(delta, toElement)));
+    }
+
+    /**
+     * Returns immutable range of the current state, later changes are not reflected in it.
+     * It is a view of the merged array if there are no pending changes and a copy otherwise.
+     */
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        State<E> current = state;
+        SortedSet<E> merged = current.merged().tailSet(fromElement);
+        Delta<E> delta = current.delta();
+        return delta.isEmpty() ? merged : merge(merged, delta.range(bound(delta, fromElement), delta.to()));
+    }
+
+    @Override
+    public E first() {
+        return iterator().next();
+    }
+
+    @Override
+    public E last() {
+        State<E> current = state;
+        return new MergingIterator<>(
+                current.merged().descendingIterator(),
+                current.delta(),
+                true,
+                Collections.reverseOrder(comparator)
+        ).next();
+    }
+
+    private boolean contains(State<E> state, E e) {
+        Delta<E> delta = state.delta();
+        int index = search(delta, e);
+        return index >= 0 ? delta.inserted()[index] : state.merged().contains(e);
+    }
+
+    private int search(Delta<E> delta, E e) {
+        return Arrays.binarySearch(delta.keys(), delta.from(), delta.to(), e, comparator);
+    }
+
+    /**
+     * Returns index of the first change not less than {@code e}.
+     */
+    private int bound(Delta<E> delta, E e) {
+        int index = search(delta, e);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Publishes state with changed membership of {@code e}, merging the delta if it is full.
+     */
+    @SuppressWarnings("unchecked")
+    private void change(State<E> current, E e, boolean inserted, int size) {
+        Delta<E> old = current.delta();
+        int index = search(old, e);
+        int length = old.size() + (index >= 0 ? -1 : 1);
+        E[] keys = (E[]) new Object[length];
+        boolean[] flags = new boolean[length];
+        if (index >= 0) {
+            // Change is reverted, membership is as in the merged array again
+            copy(old, old.from(), index, keys, flags, 0);
+            copy(old, index + 1, old.to(), keys, flags, index - old.from());
+        } else {
+            index = -index - 1;
+            int at = index - old.from();
+            copy(old, old.from(), index, keys, flags, 0);
+            keys[at] = e;
+            flags[at] = inserted;
+            copy(old, index, old.to(), keys, flags, at + 1);
+        }
+        Delta<E> delta = new Delta<>(keys, flags, 0, length);
+        state = new State<>(current.merged(), delta, size);
+        if (delta.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private static <E> void copy(Delta<E> delta, int from, int to, E[] keys, boolean[] flags, int at) {
+        System.arraycopy(delta.keys(), from, keys, at, to - from);
+        System.arraycopy(delta.inserted(), from, flags, at, to - from);
+    }
+
+    /**
+     * Merges sorted elements with changes into a new set in one pass.
+     */
+    private ArraySet<E> merge(SortedSet<E> merged, Delta<E> delta) {
+        return merge(merged, delta, merged.size() + delta.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArraySet<E> merge(SortedSet<E> merged, Delta<E> delta, int capacity) {
+        E[] result = (E[]) new Object[capacity];
+        int size = 0;
+        Iterator<E> iterator = new MergingIterator<>(merged.iterator(), delta, false, comparator);
+        while (iterator.hasNext()) {
+            result[size++] = iterator.next();
+        }
+        return ArraySet.ofSorted(result, size, comparator);
+    }
+
+    /**
+     * Iterates elements of a sorted iterator with changes applied, both in the order of the comparator,
+     * which is reversed for descending iteration.
+     */
+    private static class MergingIterator<E> implements Iterator<E> {
+        private final Iterator<E> elements;
+        private final Delta<E> changes;
+        private final int step;
+        private final int end;
+        private final Comparator<? super E> comparator;
+        private E element;
+        private boolean hasElement;
+        private int change;
+        private E next;
+        private boolean hasNext;
+
+        MergingIterator(Iterator<E> elements, Delta<E> changes, boolean descending, Comparator<? super E> comparator) {
+            this.elements = elements;
+            this.changes = changes;
+            this.step = descending ? -1 : 1;
+            this.end = descending ? changes.from() - 1 : changes.to();
+            this.change = descending ? changes.to() : changes.from() - 1;
+            this.comparator = comparator;
+            nextElement();
+            nextChange();
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            E result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            while (hasElement || change != end) {
+                int cmp = !hasElement ? 1 : change == end ? -1 : compare(element, changes.keys()[change]);
+                if (cmp < 0) {
+                    next = element;
+                    hasNext = true;
+                    nextElement();
+                    return;
+                }
+                int current = change;
+                nextChange();
+                if (cmp == 0) {
+                    // Removed element of the array
+                    nextElement();
+                } else if (changes.inserted()[current]) {
+                    next = changes.keys()[current];
+                    hasNext = true;
+                    return;
+                }
+            }
+            hasNext = false;
+        }
+
+        private void nextElement() {
+            hasElement = elements.hasNext();
+            element = hasElement ? elements.next() : null;
+        }
+
+        private void nextChange() {
+            change += step;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(E a, E b) {
+            return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package info.kgeorgiy.ja.pologov.arrayset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestLearnedIndex {
+    @Test
+    public void nanosecondTimestamps() {
+        final long[] values = new long[35];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1_700_000_000_000_000_000L + i;
+        }
+        checkAll(values);
+    }
+
+    @Test
+    public void largeKeys() {
+        final Random random = new Random(8437593845L);
+        for (final long base : new long[]{Long.MAX_VALUE / 2, 1L << 53, Long.MAX_VALUE - 100_000, Long.MIN_VALUE}) {
+            final long[] values = new long[10_000];
+            long value = base;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = value;
+                value += 1 + random.nextInt(random.nextBoolean() ? 4 : 1000);
+            }
+            checkAll(values);
+        }
+    }
+
+    @Test
+    public void randomKeys() {
+        final Random random = new Random(2349587234L);
+        for (int test = 0; test < 100; test++) {
+            final long[] values = random.longs(random.nextInt(5000)).toArray();
+            checkAll(values);
+        }
+    }
+
+    private static void checkAll(final long[] values) {
+        final LongArraySet learned = new LongArraySet(values, true);
+        final LongArraySet plain = new LongArraySet(values);
+        final long[] sorted = plain.toLongArray();
+        for (final long value : sorted) {
+            Assert.assertTrue("contains " + value, learned.contains(value));
+            for (final long key : new long[]{value - 1, value + 1}) {
+                Assert.assertEquals("contains " + key, plain.contains(key), learned.contains(key));
+                Assert.assertEquals("headSet " + key, plain.headSet(key).size(), learned.headSet(key).size());
+            }
+        }
+
+        final int[] ints = Arrays.stream(values).mapToInt(v -> (int) v).toArray();
+        final IntArraySet learnedInts = new IntArraySet(ints, true);
+        for (final int value : ints) {
+            Assert.assertTrue("contains " + value, learnedInts.contains(value));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes files with overlapping {@link AsynchronousFileChannel} reads.
+ * <p>
+ * File is read in blocks of the buffer size, up to {@code depth} consecutive blocks are requested at once
+ * into a ring of direct buffers. Blocks are fed to the digest in file order as soon as they arrive
+ * and the freed buffer is immediately reused for the next block, so a hashing thread keeps
+ * up to {@code depth} reads in flight on high-latency storage.
+ * <p>
+ * The JDK has no kernel asynchronous file I/O on Linux and most other platforms: every outstanding read
+ * is a blocking {@code pread} on a thread of the channel's executor. So all channels share one executor
+ * of at most {@link #MAX_READ_THREADS} threads, regardless of the depth and the number of hashing threads:
+ * further requests wait in its queue, and at most that many reads are actually in flight there.
+ * Idle threads of the executor terminate.
+ */
+class AsyncHasher {
+    private static final int MAX_READ_THREADS = 8;
+
+    private final int depth;
+    private final int bufferSize;
+    private final ThreadLocal<Ring> rings;
+    private final ExecutorService executor;
+
+    AsyncHasher(final int depth, final int bufferSize) {
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+        this.rings = ThreadLocal.withInitial(Ring::new);
+        final int threads = Math.min(depth, MAX_READ_THREADS);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            final Thread thread = new Thread(task, "walk-async-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Feeds all bytes of the file to the digest.
+     *
+     * @param path   file to read.
+     * @param digest digest to update.
+     * @throws IOException if the file can't be read.
+     */
+    void hash(final Path path, final MessageDigest digest) throws IOException {
+        final Ring ring = rings.get();
+        try (final AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, Set.of(StandardOpenOption.READ), executor)) {
+            final long size = channel.size();
+            final long blocks = (size + bufferSize - 1) / bufferSize;
+            try {
+                for (long block = 0; block < Math.min(depth, blocks); block++) {
+                    ring.issue(channel, block, size);
+                }
+                for (long block = 0; block < blocks; block++) {
+                    ring.complete(channel, block);
+                    digest.update(ring.buffers[slot(block)].flip());
+                    if (block + depth < blocks) {
+                        ring.issue(channel, block + depth, size);
+                    }
+                }
+            } finally {
+                // Buffers are reused by the next file, so no read may outlive this one
+                ring.drain();
+            }
+        }
+    }
+
+    private int slot(final long block) {
+        return (int) (block % depth);
+    }
+
+    private static int await(final Future<Integer> read) throws IOException {
+        try {
+            return read.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Buffers and outstanding reads of a thread.
+     */
+    private class Ring {
+        private final ByteBuffer[] buffers = new ByteBuffer[depth];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final Future<Integer>[] reads = new Future[depth];
+
+        Ring() {
+            for (int i = 0; i < depth; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+
+        void issue(final AsynchronousFileChannel channel, final long block, final long size) {
+            final long position = block * bufferSize;
+            final int slot = slot(block);
+            final ByteBuffer buffer = buffers[slot].clear().limit((int) Math.min(bufferSize, size - position));
+            reads[slot] = channel.read(buffer, position);
+        }
+
+        /**
+         * Waits until the block is read completely, reissuing short reads.
+         */
+        void complete(final AsynchronousFileChannel channel, final long block) throws IOException {
+            final int slot = slot(block);
+            final ByteBuffer buffer = buffers[slot];
+            while (true) {
+                final int read = await(reads[slot]);
+                reads[slot] = null;
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+                if (read < 0) {
+                    throw new EOFException("file was truncated while reading");
+                }
+                reads[slot] = channel.read(buffer, block * bufferSize + buffer.position());
+            }
+        }
+
+        /**
+         * Waits for all outstanding reads, even if the thread is interrupted, as they still write into the buffers.
+         */
+        void drain() {
+            boolean interrupted = false;
+            for (int i = 0; i < depth; i++) {
+                while (reads[i] != null) {
+                    try {
+                        reads[i].get();
+                        reads[i] = null;
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    } catch (final ExecutionException e) {
+                        reads[i] = null;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.SplittableRandom;
+
+/**
+ * Binary manifest of content-defined chunks of files.
+ * <p>
+ * Files are split by a Gear rolling hash: a chunk ends after a byte where the high
+ * {@link #MASK_BITS} bits of the hash are zero, but not before {@link #MIN_CHUNK}
+ * and not after {@link #MAX_CHUNK} bytes. So equal content produces equal chunks
+ * even if it is shifted by insertions, and partial duplicates of files can be found.
+ * The high bits are tested since bit {@code i} of the hash depends only on the last {@code i + 1} bytes.
+ * Every file is read once, its whole-file digest is computed in the same pass.
+ * <p>
+ * Format: header {@code MAGIC VERSION <algorithm> <digest length> <min> <mask bits> <max>}, then records
+ * {@code START <file id> <path length> <UTF-8 path>}, {@code CHUNK <file id> <chunk length> <digest>},
+ * {@code END <file id>} or {@code ABORT <file id>}, if the file could not be read to the end and its chunks are to be discarded.
+ * Records are written as chunks are produced, so memory does not depend on file sizes.
+ * Records of concurrently hashed files are interleaved, records of a file are in order and chunk offsets
+ * are sums of previous lengths. Record types are bytes, ids and lengths are unsigned LEB128 varints.
+ */
+class ChunkManifest implements Closeable {
+    private static final int MAGIC = 0x574b434d;
+    private static final int VERSION = 3;
+
+    private static final int START = 0;
+    private static final int CHUNK = 1;
+    private static final int END = 2;
+    private static final int ABORT = 3;
+
+    static final int MIN_CHUNK = 2 << 10;
+    static final int MASK_BITS = 13;
+    static final int MAX_CHUNK = 64 << 10;
+
+    private static final long[] GEAR = new SplittableRandom(0x574b434dL).longs(256).toArray();
+
+    private final DataOutputStream out;
+    private long nextId;
+
+    private ChunkManifest(final DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates manifest file and writes its header.
+     *
+     * @param file         manifest file.
+     * @param algorithm    digest algorithm name.
+     * @param digestLength length of digests in bytes.
+     * @return manifest to write records to.
+     * @throws IOException if the file can't be written.
+     */
+    static ChunkManifest create(final Path file, final String algorithm, final int digestLength) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(algorithm);
+            out.writeByte(digestLength);
+            out.writeInt(MIN_CHUNK);
+            out.writeByte(MASK_BITS);
+            out.writeInt(MAX_CHUNK);
+        } catch (final IOException e) {
+            out.close();
+            throw e;
+        }
+        return new ChunkManifest(out);
+    }
+
+    /**
+     * Reads file once, computing its whole-file digest and writing records of its chunks as they are produced.
+     *
+     * @param path        file to read.
+     * @param pathStr     path as given in the input.
+     * @param fileDigest  digest of the whole file, updated with all its bytes.
+     * @param chunkDigest digest for chunks, reset before use.
+     * @param buffer      read buffer.
+     * @throws IOException          if the file can't be read.
+     * @throws UncheckedIOException if the manifest can't be written.
+     */
+    void hash(final Path path, final String pathStr, final MessageDigest fileDigest, final MessageDigest chunkDigest, final byte[] buffer) throws IOException {
+        try (final InputStream inputStream = Files.newInputStream(path)) {
+            final long id = start(pathStr);
+            try {
+                split(inputStream, id, fileDigest, chunkDigest, buffer);
+            } catch (final IOException e) {
+                record(ABORT, id);
+                throw e;
+            }
+            record(END, id);
+        }
+    }
+
+    private void split(final InputStream inputStream, final long id, final MessageDigest fileDigest, final MessageDigest chunkDigest, final byte[] buffer) throws IOException {
+        chunkDigest.reset();
+        int length = 0;
+        long gear = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            fileDigest.update(buffer, 0, read);
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                gear = (gear << 1) + GEAR[buffer[i] & 0xFF];
+                length++;
+                if (length >= MIN_CHUNK && gear >>> (Long.SIZE - MASK_BITS) == 0 || length >= MAX_CHUNK) {
+                    chunkDigest.update(buffer, start, i + 1 - start);
+                    writeChunk(id, length, chunkDigest.digest());
+                    start = i + 1;
+                    length = 0;
+                }
+            }
+            chunkDigest.update(buffer, start, read - start);
+        }
+        if (length > 0) {
+            writeChunk(id, length, chunkDigest.digest());
+        }
+    }
+
+    private long start(final String pathStr) {
+        final byte[] pathBytes = pathStr.getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            final long id = nextId++;
+            try {
+                out.writeByte(START);
+                writeVarLong(id);
+                writeVarLong(pathBytes.length);
+                out.write(pathBytes);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("can't write chunk manifest", e);
+            }
+            return id;
+        }
+    }
+
+    private void writeChunk(final long id, final int length, final byte[] digest) {
+        synchronized (out) {
+            try {
+                out.writeByte(CHUNK);
+                writeVarLong(id);
+                writeVarLong(length);
+                out.write(digest);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("can't write chunk manifest", e);
+            }
+        }
+    }
+
+    private void record(final int type, final long id) {
+        synchronized (out) {
+            try {
+                out.writeByte(type);
+                writeVarLong(id);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("can't write chunk manifest", e);
+            }
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,168 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds groups of identical files in a single pass.
+ * <p>
+ * Files are first grouped by size, files of a unique size can't have duplicates and are never read,
+ * but their still valid cache entries are kept.
+ * Remaining files are hashed and grouped by digest. Every group of two or more identical files
+ * is written as consecutive records, so records of a group share the hash.
+ * Paths within a group are sorted and groups are ordered by their first path,
+ * so the output does not depend on the directory order.
+ * Unreadable files and directories and repeated paths are skipped. The index is kept in memory.
+ */
+class DuplicateFinder {
+    private final FileHasher hasher;
+    private final HashWriter writer;
+    private final int threads;
+
+    DuplicateFinder(final FileHasher hasher, final HashWriter writer, final int threads) {
+        this.hasher = hasher;
+        this.writer = writer;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds and writes duplicate groups among files listed in the input.
+     *
+     * @param reader    input lines.
+     * @param recursive whether directories are expanded to the regular files they contain.
+     * @throws IOException   if the input can't be read or the output can't be written.
+     * @throws WalkException if hashing is interrupted or fails.
+     */
+    void find(final BufferedReader reader, final boolean recursive) throws IOException, WalkException {
+        final Map<Long, List<SizedFile>> bySize = new HashMap<>();
+        final Set<Path> seen = new HashSet<>();
+        String pathStr;
+        while ((pathStr = reader.readLine()) != null) {
+            final Path path;
+            try {
+                path = Path.of(pathStr);
+            } catch (final InvalidPathException ignored) {
+                continue;
+            }
+            if (recursive && Files.isDirectory(path)) {
+                addTree(bySize, seen, path);
+            } else {
+                addBySize(bySize, seen, path, pathStr, null);
+            }
+        }
+
+        final List<String> candidates = new ArrayList<>();
+        for (final List<SizedFile> sameSize : bySize.values()) {
+            if (sameSize.size() > 1) {
+                for (final SizedFile file : sameSize) {
+                    candidates.add(file.path());
+                }
+            } else {
+                final SizedFile file = sameSize.get(0);
+                hasher.retain(file.path(), file.attributes());
+            }
+        }
+        bySize.clear();
+        // Groups collect sorted paths and are created in the order of their first paths
+        Collections.sort(candidates);
+
+        final Map<ByteBuffer, List<HashResult>> byDigest = new LinkedHashMap<>();
+        for (final HashResult result : hashAll(candidates)) {
+            if (result.digest() != null) {
+                byDigest.computeIfAbsent(ByteBuffer.wrap(result.digest()), digest -> new ArrayList<>()).add(result);
+            }
+        }
+        for (final List<HashResult> group : byDigest.values()) {
+            if (group.size() > 1) {
+                for (final HashResult result : group) {
+                    writer.write(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds regular files of the tree, skipping entries that can't be read and continuing with the rest.
+     */
+    private static void addTree(final Map<Long, List<SizedFile>> bySize, final Set<Path> seen, final Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                    // Symbolic links are sized by their targets
+                    addBySize(bySize, seen, file, file.toString(), attributes.isSymbolicLink() ? null : attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException ignored) {
+        }
+    }
+
+    private static void addBySize(
+            final Map<Long, List<SizedFile>> bySize,
+            final Set<Path> seen,
+            final Path path,
+            final String pathStr,
+            final BasicFileAttributes known
+    ) {
+        if (!seen.add(path.normalize())) {
+            return;
+        }
+        try {
+            final BasicFileAttributes attributes = known != null ? known : Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                bySize.computeIfAbsent(attributes.size(), size -> new ArrayList<>()).add(new SizedFile(pathStr, attributes));
+            }
+        } catch (final IOException ignored) {
+        }
+    }
+
+    private List<HashResult> hashAll(final List<String> paths) throws WalkException {
+        final List<HashResult> results = new ArrayList<>(paths.size());
+        if (threads == 1) {
+            for (final String path : paths) {
+                results.add(hasher.hash(path));
+            }
+            return results;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<HashResult>> futures = new ArrayList<>(paths.size());
+            for (final String path : paths) {
+                futures.add(pool.submit(() -> hasher.hash(path)));
+            }
+            for (final Future<HashResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkException("Error: interrupted while hashing");
+        } catch (final ExecutionException e) {
+            throw new WalkException("Error: can't hash file: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private record SizedFile(String path, BasicFileAttributes attributes) {
+    }
+}
@@ -0,0 +1,156 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes hashes of files using any {@link MessageDigest} algorithm or {@link XxHash64}.
+ * <p>
+ * Files of at least {@code mapThreshold} bytes are memory-mapped and fed
+ * to the digest directly, smaller files are read through a stream.
+ * Every thread reuses its own digest and read buffer, so hashing does not allocate them per file.
+ * If {@link ChunkManifest} is given, files are streamed through it instead,
+ * and the cache is only updated, as chunks of cached files are unknown.
+ * Otherwise, if {@link AsyncHasher} is enabled, it reads all files.
+ */
+class FileHasher {
+    static final String DEFAULT_ALGORITHM = "SHA-1";
+
+    /**
+     * Maximal size of a single mapping, files of greater size are mapped window by window.
+     */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final String algorithm;
+    private final long mapThreshold;
+    private final HashCache cache;
+    private final ChunkManifest chunks;
+    private final AsyncHasher async;
+    private final ThreadLocal<MessageDigest> digests;
+    private final ThreadLocal<MessageDigest> chunkDigests;
+    private final ThreadLocal<byte[]> buffers;
+
+    /**
+     * Creates hasher.
+     *
+     * @param options walk options: algorithm, mapping threshold and buffer size.
+     * @param cache   cache of hashes from previous runs or {@code null}.
+     * @param chunks  manifest of file chunks or {@code null}.
+     * @throws WalkException if algorithm is not supported.
+     */
+    FileHasher(final WalkOptions options, final HashCache cache, final ChunkManifest chunks) throws WalkException {
+        this.algorithm = options.algorithm;
+        this.mapThreshold = options.mapThreshold;
+        this.cache = cache;
+        this.chunks = chunks;
+        this.async = options.asyncDepth > 0 ? new AsyncHasher(options.asyncDepth, options.bufferSize) : null;
+        newDigest(algorithm);
+        // :fixed: Переиспользовать
+        digests = ThreadLocal.withInitial(this::checkedNewDigest);
+        chunkDigests = ThreadLocal.withInitial(this::checkedNewDigest);
+        buffers = ThreadLocal.withInitial(() -> new byte[options.bufferSize]);
+    }
+
+    /**
+     * Creates digest for given algorithm.
+     *
+     * @param algorithm {@link XxHash64#NAME} or any {@link MessageDigest} algorithm name.
+     * @return new digest.
+     * @throws WalkException if algorithm is not supported.
+     */
+    static MessageDigest newDigest(final String algorithm) throws WalkException {
+        if (XxHash64.NAME.equals(algorithm)) {
+            return new XxHash64();
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new WalkException("Error: unsupported hash algorithm " + algorithm);
+        }
+    }
+
+    private MessageDigest checkedNewDigest() {
+        try {
+            return newDigest(algorithm);
+        } catch (final WalkException e) {
+            throw new AssertionError("Availability of " + algorithm + " is checked in constructor", e);
+        }
+    }
+
+    /**
+     * Hashes file.
+     *
+     * @param pathStr path to the file.
+     * @return digest of the file with its attributes or the error cause if it can't be read.
+     */
+    HashResult hash(final String pathStr) {
+        final long start = System.nanoTime();
+        final MessageDigest digest = digests.get();
+        digest.reset();
+        try {
+            final Path path = Path.of(pathStr);
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (cache != null && chunks == null) {
+                final byte[] cached = cache.get(pathStr, attributes);
+                if (cached != null) {
+                    return HashResult.success(pathStr, cached, attributes, System.nanoTime() - start);
+                }
+            }
+            if (chunks != null) {
+                chunks.hash(path, pathStr, digest, chunkDigests.get(), buffers.get());
+            } else if (async != null) {
+                async.hash(path, digest);
+            } else if (attributes.size() >= mapThreshold) {
+                hashMapped(path, digest);
+            } else {
+                hashStream(path, digest, buffers.get());
+            }
+            //:fixed: Exception
+            final byte[] hash = digest.digest();
+            if (cache != null && attributes.isRegularFile()) {
+                cache.put(pathStr, attributes, hash);
+            }
+            return HashResult.success(pathStr, hash, attributes, System.nanoTime() - start);
+        } catch (final InvalidPathException | IOException e) {
+            return HashResult.failure(pathStr, e, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Keeps cached hash of the file for the next run without reading the file, if the hash is still valid.
+     *
+     * @param pathStr    path to the file.
+     * @param attributes current attributes of the file.
+     */
+    void retain(final String pathStr, final BasicFileAttributes attributes) {
+        if (cache != null && chunks == null) {
+            cache.get(pathStr, attributes);
+        }
+    }
+
+    private static void hashStream(final Path path, final MessageDigest digest, final byte[] buffer) throws IOException {
+        try (final InputStream inputStream = Files.newInputStream(path)) {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void hashMapped(final Path path, final MessageDigest digest) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of file hashes between {@link Walk} runs.
+ * <p>
+ * Hash of a file is reused if its path, size, last modification time and
+ * file key (inode, where available) are the same as at the time it was stored.
+ * Only the files looked up during the current run are saved back.
+ * <p>
+ * File format: magic, version, algorithm name and a sequence of records
+ * {@code <path> <size> <mtime ns> <file key> <digest>}, strings and digests are length-prefixed.
+ * Thread-safe.
+ */
+class HashCache {
+    private static final int MAGIC = 0x574b4348;
+    private static final int VERSION = 1;
+    private static final int MAX_LENGTH = 1 << 16;
+
+    private final Path file;
+    private final String algorithm;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private HashCache(final Path file, final String algorithm, final Map<String, Entry> previous) {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads cache from file. Missing, corrupted or built for another algorithm cache is treated as empty.
+     *
+     * @param file      cache file.
+     * @param algorithm digest algorithm name.
+     * @return loaded cache.
+     */
+    static HashCache load(final Path file, final String algorithm) {
+        final Map<String, Entry> entries = new HashMap<>();
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION && algorithm.equals(readString(in))) {
+                for (int count = in.readInt(); count > 0; count--) {
+                    final String path = readString(in);
+                    entries.put(path, new Entry(in.readLong(), in.readLong(), readString(in), readBytes(in)));
+                }
+            }
+        } catch (final NoSuchFileException ignored) {
+        } catch (final IOException e) {
+            System.err.println("Warning: ignoring corrupted cache file " + file + ": " + e.getMessage());
+            entries.clear();
+        }
+        return new HashCache(file, algorithm, entries);
+    }
+
+    /**
+     * Returns stored digest of the file, if it was not modified since.
+     *
+     * @param path       file path as given in the input.
+     * @param attributes current attributes of the file.
+     * @return stored digest or {@code null}.
+     */
+    byte[] get(final String path, final BasicFileAttributes attributes) {
+        final Entry stored = previous.get(path);
+        if (stored == null || !stored.matches(attributes)) {
+            return null;
+        }
+        current.put(path, stored);
+        return stored.digest();
+    }
+
+    void put(final String path, final BasicFileAttributes attributes, final byte[] digest) {
+        current.put(path, new Entry(attributes.size(), modified(attributes), fileKey(attributes), digest));
+    }
+
+    /**
+     * Atomically replaces cache file with entries of the current run.
+     *
+     * @throws IOException if cache can't be written.
+     */
+    void save() throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, algorithm);
+                out.writeInt(current.size());
+                for (final Map.Entry<String, Entry> e : current.entrySet()) {
+                    final Entry entry = e.getValue();
+                    writeString(out, e.getKey());
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.modified());
+                    writeString(out, entry.fileKey());
+                    writeBytes(out, entry.digest());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static long modified(final BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String fileKey(final BasicFileAttributes attributes) {
+        return attributes.fileKey() == null ? "" : attributes.fileKey().toString();
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("invalid length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private record Entry(long size, long modified, String fileKey, byte[] digest) {
+        boolean matches(final BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && modified == HashCache.modified(attributes)
+                    && fileKey.equals(HashCache.fileKey(attributes));
+        }
+    }
+}
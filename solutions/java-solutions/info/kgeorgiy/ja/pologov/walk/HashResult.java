@@ -0,0 +1,23 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Result of hashing a single input path.
+ *
+ * @param path         path as given in the input.
+ * @param digest       digest of the file or {@code null} on error.
+ * @param size         file size in bytes or {@code -1} on error.
+ * @param modified     last modification time in milliseconds since the epoch or {@code -1} on error.
+ * @param elapsedNanos time spent on the file.
+ * @param error        cause of the error or {@code null} on success.
+ */
+record HashResult(String path, byte[] digest, long size, long modified, long elapsedNanos, String error) {
+    static HashResult success(final String path, final byte[] digest, final BasicFileAttributes attributes, final long elapsedNanos) {
+        return new HashResult(path, digest, attributes.size(), attributes.lastModifiedTime().toMillis(), elapsedNanos, null);
+    }
+
+    static HashResult failure(final String path, final Exception cause, final long elapsedNanos) {
+        return new HashResult(path, null, -1, -1, elapsedNanos, cause.getClass().getSimpleName() + ": " + cause.getMessage());
+    }
+}
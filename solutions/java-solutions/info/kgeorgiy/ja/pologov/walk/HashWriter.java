@@ -0,0 +1,226 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes {@link HashResult}s to the output file in one of the {@link Format}s.
+ * <p>
+ * Thread-safe: records written concurrently are never interleaved.
+ * Every written record is counted in {@link WalkMetrics}.
+ */
+abstract class HashWriter implements Closeable {
+    /**
+     * Output formats.
+     */
+    enum Format {
+        /**
+         * {@code <hex hash> <path>} lines, zeros instead of the hash on error.
+         */
+        TEXT,
+        /**
+         * JSON object per line with path, hash, size, mtime, elapsed time and error cause.
+         */
+        JSONL,
+        /**
+         * Length-prefixed binary records, see {@link BinaryWriter}.
+         */
+        BINARY
+    }
+
+    /**
+     * Two hex digits for every byte value.
+     */
+    private static final char[] HEX = new char[512];
+
+    static {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < 256; i++) {
+            HEX[2 * i] = digits[i >>> 4];
+            HEX[2 * i + 1] = digits[i & 0xF];
+        }
+    }
+
+    private final WalkMetrics metrics;
+
+    private HashWriter(final WalkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates writer of given format.
+     *
+     * @param format       output format.
+     * @param out          output stream, closed with the writer.
+     * @param digestLength length of digests in bytes.
+     * @param metrics      metrics to count written records in.
+     * @return new writer.
+     */
+    static HashWriter create(final Format format, final OutputStream out, final int digestLength, final WalkMetrics metrics) {
+        return switch (format) {
+            case TEXT -> new TextWriter(out, digestLength, metrics);
+            case JSONL -> new JsonWriter(out, digestLength, metrics);
+            case BINARY -> new BinaryWriter(out, metrics);
+        };
+    }
+
+    /**
+     * Writes record for the file.
+     *
+     * @param result hashing result.
+     * @throws IOException if an I/O error occurs.
+     */
+    final synchronized void write(final HashResult result) throws IOException {
+        writeRecord(result);
+        metrics.written(result);
+    }
+
+    protected abstract void writeRecord(HashResult result) throws IOException;
+
+    static void encodeHex(final byte[] bytes, final char[] chars) {
+        for (int i = 0; i < bytes.length; i++) {
+            final int index = 2 * (bytes[i] & 0xFF);
+            chars[2 * i] = HEX[index];
+            chars[2 * i + 1] = HEX[index + 1];
+        }
+    }
+
+    /**
+     * Base of the text formats: digests are hex-encoded through a lookup table into a reused buffer,
+     * so no intermediate strings are created per line.
+     */
+    private abstract static class CharWriter extends HashWriter {
+        protected final Writer writer;
+        private final char[] hex;
+        private final char[] errorHex;
+
+        CharWriter(final OutputStream out, final int digestLength, final WalkMetrics metrics) {
+            super(metrics);
+            // :fixed: Кодировки
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.hex = new char[2 * digestLength];
+            this.errorHex = new char[2 * digestLength];
+            Arrays.fill(errorHex, '0');
+        }
+
+        protected void writeHex(final byte[] digest) throws IOException {
+            if (digest == null) {
+                writer.write(errorHex);
+            } else {
+                encodeHex(digest, hex);
+                writer.write(hex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static class TextWriter extends CharWriter {
+        TextWriter(final OutputStream out, final int digestLength, final WalkMetrics metrics) {
+            super(out, digestLength, metrics);
+        }
+
+        @Override
+        protected void writeRecord(final HashResult result) throws IOException {
+            writeHex(result.digest());
+            writer.write(' ');
+            writer.write(result.path());
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    private static class JsonWriter extends CharWriter {
+        JsonWriter(final OutputStream out, final int digestLength, final WalkMetrics metrics) {
+            super(out, digestLength, metrics);
+        }
+
+        @Override
+        protected void writeRecord(final HashResult result) throws IOException {
+            writer.write("{\"path\":");
+            writeString(result.path());
+            writer.write(",\"hash\":");
+            if (result.digest() == null) {
+                writer.write("null");
+            } else {
+                writer.write('"');
+                writeHex(result.digest());
+                writer.write('"');
+            }
+            writer.write(",\"size\":");
+            writer.write(Long.toString(result.size()));
+            writer.write(",\"mtime\":");
+            writer.write(Long.toString(result.modified()));
+            writer.write(",\"elapsedNs\":");
+            writer.write(Long.toString(result.elapsedNanos()));
+            writer.write(",\"error\":");
+            if (result.error() == null) {
+                writer.write("null");
+            } else {
+                writeString(result.error());
+            }
+            writer.write("}\n");
+        }
+
+        private void writeString(final String value) throws IOException {
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> writer.write("\\\"");
+                    case '\\' -> writer.write("\\\\");
+                    case '\n' -> writer.write("\\n");
+                    case '\r' -> writer.write("\\r");
+                    case '\t' -> writer.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.write(c);
+                        }
+                    }
+                }
+            }
+            writer.write('"');
+        }
+    }
+
+    /**
+     * Record: {@code <int length of the rest> <byte digest length, 0 on error> <digest>
+     * <long size> <long mtime ms> <long elapsed ns> <UTF path> <UTF error, empty on success>},
+     * big-endian, strings in modified UTF-8 of {@link DataOutput#writeUTF}.
+     */
+    private static class BinaryWriter extends HashWriter {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+
+        BinaryWriter(final OutputStream out, final WalkMetrics metrics) {
+            super(metrics);
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        @Override
+        protected void writeRecord(final HashResult result) throws IOException {
+            record.reset();
+            final byte[] digest = result.digest() == null ? new byte[0] : result.digest();
+            recordOut.writeByte(digest.length);
+            recordOut.write(digest);
+            recordOut.writeLong(result.size());
+            recordOut.writeLong(result.modified());
+            recordOut.writeLong(result.elapsedNanos());
+            recordOut.writeUTF(result.path());
+            recordOut.writeUTF(result.error() == null ? "" : result.error());
+            out.writeInt(record.size());
+            record.writeTo(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
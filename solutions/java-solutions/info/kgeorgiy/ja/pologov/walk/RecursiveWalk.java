@@ -0,0 +1,11 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+/**
+ * Same as {@link Walk}, but directories listed in the input file
+ * are hashed recursively on a fork-join pool of {@code -threads} workers.
+ */
+public class RecursiveWalk {
+    public static void main(final String[] args) {
+        Walk.run(args, true);
+    }
+}
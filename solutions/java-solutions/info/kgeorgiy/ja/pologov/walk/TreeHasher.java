@@ -0,0 +1,168 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recursively hashes directory trees on a fork-join pool.
+ * <p>
+ * Every subdirectory is listed by its own task, files of a directory are hashed
+ * by tasks of at most {@link #FILES_PER_TASK} files. Entries of a directory are visited in order of their names,
+ * so the output is deterministic. A directory task does not wait for its subtasks, it returns them
+ * in output order, and {@link #write} writes results of every subtask as soon as it and all subtasks
+ * before it are completed, so results are neither collected per tree nor delayed until the tree is hashed.
+ * Entries that can't be read get error lines, the rest of their directory is still hashed.
+ */
+class TreeHasher {
+    private static final int FILES_PER_TASK = 64;
+
+    private final FileHasher hasher;
+
+    TreeHasher(final FileHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    /**
+     * Results of a task: hashed files, followed by subtasks producing the rest of the results in output order.
+     */
+    record Part(List<HashResult> results, List<ForkJoinTask<Part>> subtasks) {
+        static Part of(final HashResult result) {
+            return new Part(List.of(result), List.of());
+        }
+    }
+
+    /**
+     * Creates task hashing given file or all files of given directory recursively.
+     *
+     * @param pathStr input line.
+     * @return task to run in a {@link java.util.concurrent.ForkJoinPool}, its results are written by {@link #write}.
+     */
+    ForkJoinTask<Part> task(final String pathStr) {
+        return new LineTask(pathStr);
+    }
+
+    /**
+     * Writes results of the task and its subtasks in output order, waiting for each of them in turn.
+     *
+     * @param task   task returned by {@link #task}, submitted to a pool.
+     * @param writer output.
+     * @throws IOException if the output can't be written.
+     */
+    void write(final ForkJoinTask<Part> task, final HashWriter writer) throws IOException {
+        final Part part = task.join();
+        for (final HashResult result : part.results()) {
+            writer.write(result);
+        }
+        final List<ForkJoinTask<Part>> subtasks = part.subtasks();
+        for (int i = 0; i < subtasks.size(); i++) {
+            write(subtasks.get(i), writer);
+            // Written results are released
+            subtasks.set(i, null);
+        }
+    }
+
+    /**
+     * Entries which attributes can't be read are hashed as files, so they get their own error lines.
+     */
+    private static boolean isDirectory(final Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class LineTask extends RecursiveTask<Part> {
+        private final String pathStr;
+
+        LineTask(final String pathStr) {
+            this.pathStr = pathStr;
+        }
+
+        @Override
+        protected Part compute() {
+            final Path path;
+            try {
+                path = Path.of(pathStr);
+            } catch (final InvalidPathException e) {
+                return Part.of(HashResult.failure(pathStr, e, 0));
+            }
+            if (Files.isDirectory(path)) {
+                return new DirectoryTask(path).compute();
+            }
+            return Part.of(hasher.hash(pathStr));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveTask<Part> {
+        private final Path dir;
+
+        DirectoryTask(final Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected Part compute() {
+            final List<Path> entries = new ArrayList<>();
+            try (final DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                stream.forEach(entries::add);
+            } catch (final IOException | DirectoryIteratorException e) {
+                return Part.of(HashResult.failure(dir.toString(), e, 0));
+            }
+            entries.sort(null);
+
+            final List<ForkJoinTask<Part>> subtasks = new ArrayList<>();
+            final List<Path> files = new ArrayList<>();
+            for (final Path entry : entries) {
+                if (isDirectory(entry)) {
+                    flush(files, subtasks);
+                    subtasks.add(new DirectoryTask(entry).fork());
+                } else {
+                    files.add(entry);
+                    if (files.size() == FILES_PER_TASK) {
+                        flush(files, subtasks);
+                    }
+                }
+            }
+            flush(files, subtasks);
+            return new Part(List.of(), subtasks);
+        }
+
+        private void flush(final List<Path> files, final List<ForkJoinTask<Part>> subtasks) {
+            if (!files.isEmpty()) {
+                subtasks.add(new FilesTask(List.copyOf(files)).fork());
+                files.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class FilesTask extends RecursiveTask<Part> {
+        private final List<Path> files;
+
+        FilesTask(final List<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected Part compute() {
+            final List<HashResult> results = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                results.add(hasher.hash(file.toString()));
+            }
+            return new Part(results, List.of());
+        }
+    }
+}
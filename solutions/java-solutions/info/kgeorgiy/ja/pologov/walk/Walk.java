@@ -1,15 +1,40 @@
 package info.kgeorgiy.ja.pologov.walk;
 
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class Walk {
+    private static final Map.Entry<String, Future<HashResult>> END = new AbstractMap.SimpleImmutableEntry<>("", null);
+
     public static void main(final String[] args) {
+        run(args, false);
+    }
+
+    /**
+     * Runs walk with given command line arguments.
+     *
+     * @param args      command line arguments.
+     * @param recursive whether directories should be hashed recursively.
+     */
+    static void run(final String[] args, final boolean recursive) {
         if (args == null) {
             System.err.println("Error: arguments are null");
         } else if (args.length < 2) {
@@ -20,25 +45,32 @@ public class Walk {
             System.err.println("Error: second argument is null");
         } else {
             try {
-                crawlFiles(args[0], args[1]);
+                crawlFiles(WalkOptions.parse(args), recursive);
             } catch (final Exception e) {
-                System.err.println(e.getMessage());
+                System.err.println(e.getMessage() != null ? e.getMessage() : "Error: " + e);
             }
         }
     }
 
-    private static void crawlFiles(final String input, final String output) throws WalkException {
+    /**
+     * Runs walk with parsed options.
+     *
+     * @param options   walk options.
+     * @param recursive whether directories should be hashed recursively.
+     * @throws WalkException if the walk fails.
+     */
+    static void crawlFiles(final WalkOptions options, final boolean recursive) throws WalkException {
         // :NOTE: Функция
         final Path inputPath;
         try {
-            inputPath = Path.of(input);
+            inputPath = Path.of(options.input);
         } catch (final InvalidPathException e) {
             throw new WalkException("Error: invalid input file path");
         }
 
         final Path outputPath;
         try {
-            outputPath = Path.of(output);
+            outputPath = Path.of(options.output);
         } catch (final InvalidPathException e) {
             throw new WalkException("Error: invalid output file path");
         }
@@ -56,50 +88,208 @@ public class Walk {
             }
         }
 
-        // :NOTE: Кодировки
+        final int digestLength = FileHasher.newDigest(options.algorithm).getDigestLength();
+        final HashCache cache = loadCache(options.cache, options.algorithm);
+        final WalkMetrics metrics = new WalkMetrics();
+        final ScheduledExecutorService reporter = options.metricsPeriod > 0 ? metrics.startReporting(options.metricsPeriod) : null;
+        try {
+            if (options.watchDelay > 0) {
+                if (recursive) {
+                    throw new WalkException("Error: -watch is not supported by recursive walk");
+                }
+                watchFiles(options, inputPath, outputPath, cache, metrics, digestLength);
+            } else {
+                hashFiles(options, inputPath, outputPath, cache, metrics, digestLength, recursive);
+            }
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+                System.err.println(metrics.report());
+            }
+        }
+    }
+
+    private static void hashFiles(final WalkOptions options, final Path inputPath, final Path outputPath, final HashCache cache, final WalkMetrics metrics, final int digestLength, final boolean recursive) throws WalkException {
         try (
-                final BufferedReader reader = Files.newBufferedReader(inputPath);
-                final BufferedWriter writer = Files.newBufferedWriter(outputPath)
+                final BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8);
+                final HashWriter writer = HashWriter.create(options.format, Files.newOutputStream(outputPath), digestLength, metrics);
+                final ChunkManifest chunks = createChunks(options.chunks, options.algorithm)
         ) {
-            String pathStr;
-            while ((pathStr = reader.readLine()) != null) {
-                // :NOTE: Переиспользовать
-                final MessageDigest digest = MessageDigest.getInstance("SHA-1");
-                try (final InputStream inputStream = new DigestInputStream(Files.newInputStream(Path.of(pathStr)), digest)) {
-                    // :NOTE: Переиспользовать
-                    final byte[] bytes = new byte[1024];
-                    while (inputStream.read(bytes) > 0);
-                    //:fixed: Exception
-                    writeHash(writer, pathStr, bytesToHexString(digest.digest()));
-                } catch (final InvalidPathException | IOException e) {
-                    writeHash(writer, pathStr, "0000000000000000000000000000000000000000");
-                }
+            final FileHasher hasher = new FileHasher(options, cache, chunks);
+            if (options.dedup) {
+                new DuplicateFinder(hasher, writer, options.threads).find(reader, recursive);
+            } else if (recursive) {
+                hashRecursively(reader, writer, hasher, metrics, options.threads, options.window());
+            } else if (options.threads == 1) {
+                hashSequentially(reader, writer, hasher);
+            } else {
+                hashPipelined(reader, writer, hasher, metrics, options.threads, options.window());
             }
-        } catch (final WalkException | SecurityException | IOException | NoSuchAlgorithmException e) {
+            if (cache != null) {
+                saveCache(cache);
+            }
+        } catch (final UncheckedIOException e) {
+            throw new WalkException("Error: " + e.getMessage());
+        } catch (final SecurityException | IOException e) {
             // :NOTE: Что и когда произошло
             throw new WalkException("Error: can't open input/output file");
         }
     }
 
-    public static String bytesToHexString(final byte[] bytes) {
-        final StringBuilder sb = new StringBuilder();
-        for (final byte b : bytes) {
-            final int value = b & 0xFF;
-            if (value < 16) {
-                sb.append("0");
+    private static void watchFiles(final WalkOptions options, final Path inputPath, final Path outputPath, final HashCache cache, final WalkMetrics metrics, final int digestLength) throws WalkException {
+        try (final BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+            final FileHasher hasher = new FileHasher(options, cache, null);
+            new WalkWatcher(options, hasher, cache, metrics, digestLength).watch(reader, outputPath);
+        } catch (final SecurityException | IOException e) {
+            throw new WalkException("Error: can't watch input files: " + e.getMessage());
+        }
+    }
+
+    private static ChunkManifest createChunks(final String chunks, final String algorithm) throws WalkException {
+        if (chunks == null) {
+            return null;
+        }
+        try {
+            return ChunkManifest.create(Path.of(chunks), algorithm, FileHasher.newDigest(algorithm).getDigestLength());
+        } catch (final InvalidPathException e) {
+            throw new WalkException("Error: invalid chunk manifest path");
+        } catch (final IOException e) {
+            throw new WalkException("Error: can't create chunk manifest: " + e.getMessage());
+        }
+    }
+
+    private static HashCache loadCache(final String cache, final String algorithm) throws WalkException {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return HashCache.load(Path.of(cache), algorithm);
+        } catch (final InvalidPathException e) {
+            throw new WalkException("Error: invalid cache file path");
+        }
+    }
+
+    private static void saveCache(final HashCache cache) throws WalkException {
+        try {
+            cache.save();
+        } catch (final IOException e) {
+            throw new WalkException("Error: can't write cache file: " + e.getMessage());
+        }
+    }
+
+    private static void hashSequentially(final BufferedReader reader, final HashWriter writer, final FileHasher hasher) throws IOException, WalkException {
+        String pathStr;
+        while ((pathStr = reader.readLine()) != null) {
+            writeHash(writer, hasher.hash(pathStr));
+        }
+    }
+
+    /**
+     * Hashes files in a pipeline of three stages: this thread reads input lines and submits them
+     * to a pool of {@code threads} hashing workers, a separate thread writes results in the order of input lines.
+     * Stages are connected by a queue of at most {@code window} lines, so memory use does not depend
+     * on the input size and slow output stalls hashing only when the whole window is hashed.
+     */
+    private static void hashPipelined(final BufferedReader reader, final HashWriter writer, final FileHasher hasher, final WalkMetrics metrics, final int threads, final int window) throws IOException, WalkException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ExecutorService output = Executors.newSingleThreadExecutor();
+        try {
+            final BlockingQueue<Map.Entry<String, Future<HashResult>>> queue = new ArrayBlockingQueue<>(window);
+            final Future<Void> written = output.submit(() -> writeOrdered(queue, writer, metrics));
+            String pathStr;
+            while ((pathStr = reader.readLine()) != null) {
+                final String path = pathStr;
+                metrics.submitted();
+                queue.put(new AbstractMap.SimpleImmutableEntry<>(path, pool.submit(() -> hasher.hash(path))));
+            }
+            queue.put(END);
+            written.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalkException("Error: interrupted while hashing");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof WalkException) {
+                throw (WalkException) e.getCause();
             }
-            sb.append(Integer.toHexString(value));
+            throw new WalkException("Error: can't write output file: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+            output.shutdownNow();
         }
-        return sb.toString();
     }
 
-    private static void writeHash(final BufferedWriter writer, final String path, final String hash) throws WalkException {
+    /**
+     * Writer stage of {@link #hashPipelined}. After the first error remaining lines are cancelled
+     * until {@link #END}, so the reader stage is never blocked.
+     */
+    private static Void writeOrdered(final BlockingQueue<Map.Entry<String, Future<HashResult>>> queue, final HashWriter writer, final WalkMetrics metrics) throws InterruptedException, WalkException {
+        WalkException failure = null;
+        for (Map.Entry<String, Future<HashResult>> entry = queue.take(); entry != END; entry = queue.take()) {
+            metrics.completed();
+            if (failure != null) {
+                entry.getValue().cancel(true);
+                continue;
+            }
+            try {
+                writeHash(writer, entry.getValue().get());
+            } catch (final WalkException e) {
+                failure = e;
+            } catch (final ExecutionException e) {
+                failure = new WalkException("Error: can't hash " + entry.getKey() + ": " + e.getCause().getMessage());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * Hashes directory trees on a fork-join pool of {@code threads} workers.
+     * At most {@code window} input lines are in flight, their results are written in input order.
+     */
+    private static void hashRecursively(final BufferedReader reader, final HashWriter writer, final FileHasher hasher, final WalkMetrics metrics, final int threads, final int window) throws IOException, WalkException {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final TreeHasher treeHasher = new TreeHasher(hasher);
+            final Queue<ForkJoinTask<TreeHasher.Part>> tasks = new ArrayDeque<>();
+            String pathStr;
+            while ((pathStr = reader.readLine()) != null) {
+                metrics.submitted();
+                tasks.add(pool.submit(treeHasher.task(pathStr)));
+                if (tasks.size() >= window) {
+                    writeTree(treeHasher, writer, metrics, tasks.remove());
+                }
+            }
+            while (!tasks.isEmpty()) {
+                writeTree(treeHasher, writer, metrics, tasks.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void writeTree(final TreeHasher treeHasher, final HashWriter writer, final WalkMetrics metrics, final ForkJoinTask<TreeHasher.Part> task) throws WalkException {
+        try {
+            treeHasher.write(task, writer);
+        } catch (final IOException e) {
+            throw new WalkException("Error: can't write output file: " + e.getMessage());
+        }
+        metrics.completed();
+    }
+
+    public static String bytesToHexString(final byte[] bytes) {
+        final char[] chars = new char[2 * bytes.length];
+        HashWriter.encodeHex(bytes, chars);
+        return new String(chars);
+    }
+
+    private static void writeHash(final HashWriter writer, final HashResult result) throws WalkException {
         try {
-            writer.write(hash + " " + path);
-            writer.newLine();
+            writer.write(result);
         } catch (final IOException e) {
             // :fixed: Описать, что случилось
-            throw new WalkException("can't write output file");
+            throw new WalkException("Error: can't write output file: " + e.getMessage());
         }
     }
 }
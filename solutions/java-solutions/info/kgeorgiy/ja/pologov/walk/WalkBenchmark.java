@@ -0,0 +1,147 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Throughput benchmark of {@link Walk} hashing modes.
+ * <p>
+ * Generates synthetic data sets (many tiny files, a few huge files and a mixed distribution)
+ * and reports files/s and MB/s of each mode on them. Files are read from the page cache
+ * after the first warmup iteration, so numbers show hashing and syscall costs, not disk speed.
+ * <p>
+ * Usage: {@code WalkBenchmark [<scale> [<iterations>]]}, scale multiplies data set sizes (1 by default).
+ */
+public class WalkBenchmark {
+    private static final int DEFAULT_SCALE = 1;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int WARMUP_ITERATIONS = 2;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final List<String[]> MODES = List.of(
+            new String[]{},
+            new String[]{"-threads", String.valueOf(THREADS)},
+            new String[]{"-mmap-threshold", "1"},
+            new String[]{"-threads", String.valueOf(THREADS), "-mmap-threshold", "1"},
+            new String[]{"-threads", String.valueOf(THREADS), "-algorithm", XxHash64.NAME},
+            new String[]{"-async", "8"}
+    );
+
+    private final Path root;
+    private final Random random = new Random(4875043285743285204L);
+
+    private WalkBenchmark(final Path root) {
+        this.root = root;
+    }
+
+    public static void main(final String[] args) {
+        final int scale = args != null && args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SCALE;
+        final int iterations = args != null && args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        try {
+            final Path root = Files.createTempDirectory("walk-benchmark");
+            try {
+                final WalkBenchmark benchmark = new WalkBenchmark(root);
+                benchmark.run("tiny", benchmark.files("tiny", 20_000 * scale, 0, 4 << 10), iterations);
+                benchmark.run("huge", benchmark.files("huge", 4, (64L << 20) * scale, (64L << 20) * scale + 1), iterations);
+                benchmark.run("mixed", benchmark.mixed(scale), iterations);
+            } finally {
+                delete(root);
+            }
+        } catch (final IOException e) {
+            System.err.println("Error: can't prepare benchmark data: " + e.getMessage());
+        } catch (final WalkException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs every mode on the files, failing on the first walk error instead of timing it.
+     */
+    private void run(final String name, final List<Path> files, final int iterations) throws IOException, WalkException {
+        final Path input = root.resolve(name + ".in");
+        final Path output = root.resolve(name + ".out");
+        try (final BufferedWriter writer = Files.newBufferedWriter(input)) {
+            for (final Path file : files) {
+                writer.write(file.toString());
+                writer.newLine();
+            }
+        }
+        long bytes = 0;
+        for (final Path file : files) {
+            if (Files.isRegularFile(file)) {
+                bytes += Files.size(file);
+            }
+        }
+
+        System.out.format("%s: %d files, %.1f MB%n", name, files.size(), bytes / 1e6);
+        for (final String[] mode : MODES) {
+            final String[] args = new String[mode.length + 2];
+            args[0] = input.toString();
+            args[1] = output.toString();
+            System.arraycopy(mode, 0, args, 2, mode.length);
+
+            final WalkOptions options = WalkOptions.parse(args);
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                Walk.crawlFiles(options, false);
+            }
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                final long start = System.nanoTime();
+                Walk.crawlFiles(options, false);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            final double seconds = best / 1e9;
+            System.out.format("    %-50s %12.0f files/s %10.1f MB/s%n",
+                    mode.length == 0 ? "sequential" : String.join(" ", mode),
+                    files.size() / seconds, bytes / 1e6 / seconds);
+        }
+    }
+
+    private List<Path> files(final String name, final int count, final long minSize, final long maxSize) throws IOException {
+        final Path dir = Files.createDirectories(root.resolve(name));
+        final List<Path> files = new ArrayList<>();
+        final byte[] block = new byte[1 << 20];
+        for (int i = 0; i < count; i++) {
+            final Path file = dir.resolve(i / 1000 + "/" + i);
+            Files.createDirectories(file.getParent());
+            long size = minSize + random.nextLong(maxSize - minSize);
+            try (final var out = Files.newOutputStream(file)) {
+                for (; size > 0; size -= block.length) {
+                    random.nextBytes(block);
+                    out.write(block, 0, (int) Math.min(size, block.length));
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private List<Path> mixed(final int scale) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        files.addAll(files("mixed/small", 5_000 * scale, 0, 16 << 10));
+        files.addAll(files("mixed/medium", 200 * scale, 16 << 10, 4 << 20));
+        files.addAll(files("mixed/large", 2, (32L << 20) * scale, (32L << 20) * scale + 1));
+        files.add(root.resolve("mixed/missing"));
+        return files;
+    }
+
+    private static void delete(final Path root) throws IOException {
+        try (final Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of a {@link Walk} run: written files and bytes, errors and input lines in flight.
+ * <p>
+ * Thread-safe. If reporting is started, a line with totals and rates since the previous report
+ * is printed to {@link System#err} periodically.
+ */
+class WalkMetrics {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final long start = System.nanoTime();
+
+    private long lastTime = start;
+    private long lastFiles;
+    private long lastBytes;
+
+    void submitted() {
+        inFlight.incrementAndGet();
+    }
+
+    void completed() {
+        inFlight.decrementAndGet();
+    }
+
+    void written(final HashResult result) {
+        files.increment();
+        if (result.digest() == null) {
+            errors.increment();
+        } else {
+            bytes.add(result.size());
+        }
+    }
+
+    /**
+     * Starts periodic reporting.
+     *
+     * @param periodSeconds period between reports.
+     * @return daemon executor printing reports, to be shut down after the run.
+     */
+    ScheduledExecutorService startReporting(final int periodSeconds) {
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "walk-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.err.println(report()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    /**
+     * Returns totals and rates since the previous report.
+     *
+     * @return single-line report.
+     */
+    synchronized String report() {
+        final long now = System.nanoTime();
+        final long currentFiles = files.sum();
+        final long currentBytes = bytes.sum();
+        final double seconds = Math.max(now - lastTime, 1) / 1e9;
+        final String report = String.format(
+                "files: %d (%.0f/s), bytes: %d (%.1f MB/s), errors: %d, in flight: %d, elapsed: %.1f s",
+                currentFiles, (currentFiles - lastFiles) / seconds,
+                currentBytes, (currentBytes - lastBytes) / 1e6 / seconds,
+                errors.sum(), inFlight.get(), (now - start) / 1e9
+        );
+        lastTime = now;
+        lastFiles = currentFiles;
+        lastBytes = currentBytes;
+        return report;
+    }
+}
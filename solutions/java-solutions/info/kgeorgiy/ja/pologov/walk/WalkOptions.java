@@ -0,0 +1,135 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.util.Locale;
+
+/**
+ * Command line options of {@link Walk}.
+ * <p>
+ * Format: {@code <input file> <output file> [-threads <count>] [-mmap-threshold <bytes>] [-cache <file>]
+ * [-algorithm <name>] [-window <lines>]
+ * [-buffer-size <bytes>] [-chunks <manifest file>]
+ * [-async <reads in flight>] [-format text|jsonl|binary] [-metrics <period in seconds>] [-dedup]
+ * [-watch <debounce ms>]}.
+ * <p>
+ * With {@code -dedup} only groups of identical files are written, see {@link DuplicateFinder}.
+ * With {@code -watch} the output is kept up to date until the process is stopped, see {@link WalkWatcher}.
+ * <p>
+ * Algorithm is either {@link XxHash64#NAME} or any {@link java.security.MessageDigest} algorithm,
+ * for example {@code SHA-1} (default) or {@code SHA-256}.
+ */
+class WalkOptions {
+    private static final int DEFAULT_THREADS = 1;
+    /**
+     * Bounded well below the parallelism limit of {@link java.util.concurrent.ForkJoinPool}.
+     */
+    private static final int MAX_THREADS = 1 << 12;
+    private static final int WINDOW_PER_THREAD = 16;
+    /**
+     * Queue of the window is preallocated, so it is bounded.
+     */
+    private static final int MAX_WINDOW = 1 << 20;
+    private static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+    private static final int MAX_BUFFER_SIZE = 1 << 30;
+    private static final int MAX_ASYNC_DEPTH = 1 << 10;
+    /**
+     * Maximal direct memory of async buffers of a hashing thread: {@code -async} times {@code -buffer-size}.
+     */
+    private static final long MAX_ASYNC_MEMORY = 1L << 28;
+    private static final long DEFAULT_MAP_THRESHOLD = 64L << 20;
+
+    final String input;
+    final String output;
+    int threads = DEFAULT_THREADS;
+    long mapThreshold = DEFAULT_MAP_THRESHOLD;
+    String cache;
+    String algorithm = FileHasher.DEFAULT_ALGORITHM;
+    int window;
+    int bufferSize = DEFAULT_BUFFER_SIZE;
+    String chunks;
+    int asyncDepth;
+    HashWriter.Format format = HashWriter.Format.TEXT;
+    int metricsPeriod;
+    boolean dedup;
+    int watchDelay;
+
+    private WalkOptions(final String input, final String output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Parses options following the input and output file names.
+     *
+     * @param args command line arguments, first two of them are not null.
+     * @return parsed options.
+     * @throws WalkException if some option is unknown or has invalid value.
+     */
+    static WalkOptions parse(final String[] args) throws WalkException {
+        final WalkOptions options = new WalkOptions(args[0], args[1]);
+        for (int i = 2; i < args.length; i++) {
+            final String option = args[i];
+            if (option == null) {
+                throw new WalkException("Error: option " + i + " is null");
+            }
+            switch (option) {
+                case "-threads" -> options.threads = (int) positive(option, value(args, ++i), MAX_THREADS);
+                case "-mmap-threshold" -> options.mapThreshold = positive(option, value(args, ++i), Long.MAX_VALUE);
+                case "-cache" -> options.cache = value(args, ++i);
+                case "-algorithm" -> options.algorithm = value(args, ++i);
+                case "-window" -> options.window = (int) positive(option, value(args, ++i), MAX_WINDOW);
+                case "-buffer-size" -> options.bufferSize = (int) positive(option, value(args, ++i), MAX_BUFFER_SIZE);
+                case "-chunks" -> options.chunks = value(args, ++i);
+                case "-async" -> options.asyncDepth = (int) positive(option, value(args, ++i), MAX_ASYNC_DEPTH);
+                case "-format" -> options.format = format(value(args, ++i));
+                case "-metrics" -> options.metricsPeriod = (int) positive(option, value(args, ++i), Integer.MAX_VALUE);
+                case "-dedup" -> options.dedup = true;
+                case "-watch" -> options.watchDelay = (int) positive(option, value(args, ++i), Integer.MAX_VALUE);
+                default -> throw new WalkException("Error: unknown option " + option);
+            }
+        }
+        if (options.watchDelay > 0 && (options.dedup || options.chunks != null)) {
+            throw new WalkException("Error: -watch can't be combined with -dedup or -chunks");
+        }
+        if ((long) options.asyncDepth * options.bufferSize > MAX_ASYNC_MEMORY) {
+            throw new WalkException("Error: -async times -buffer-size must be at most " + MAX_ASYNC_MEMORY + " bytes");
+        }
+        return options;
+    }
+
+    /**
+     * Returns maximal number of input lines in flight, {@code threads * 16} by default, but at most {@link #MAX_WINDOW}.
+     *
+     * @return window size.
+     */
+    int window() {
+        return window > 0 ? window : (int) Math.min(MAX_WINDOW, (long) threads * WINDOW_PER_THREAD);
+    }
+
+    private static String value(final String[] args, final int i) throws WalkException {
+        if (i >= args.length || args[i] == null) {
+            throw new WalkException("Error: option " + args[i - 1] + " requires a value");
+        }
+        return args[i];
+    }
+
+    private static HashWriter.Format format(final String value) throws WalkException {
+        try {
+            return HashWriter.Format.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new WalkException("Error: unknown output format " + value);
+        }
+    }
+
+    private static long positive(final String option, final String value, final long max) throws WalkException {
+        final long result;
+        try {
+            result = Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            throw new WalkException("Error: invalid value of " + option + ": " + value);
+        }
+        if (result <= 0 || result > max) {
+            throw new WalkException("Error: value of " + option + " must be in range [1, " + max + "]: " + value);
+        }
+        return result;
+    }
+}
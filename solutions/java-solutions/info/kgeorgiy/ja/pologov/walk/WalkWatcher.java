@@ -0,0 +1,201 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running {@link Walk}: hashes all input files once and then keeps the output up to date.
+ * <p>
+ * Parent directories of the input files are registered in a {@link WatchService}.
+ * Events are collected until no new event arrives for the debounce delay, but for at most
+ * {@link #MAX_BATCH_DELAYS} delays, so constantly changing files still get rehashed.
+ * Then only the changed input lines of the batch are rehashed on a pool kept for the whole run
+ * and the output is rewritten atomically (written to a temporary file next to it and moved over it),
+ * so readers never see a partial file. Only rehashed files are counted in metrics.
+ * Input file itself is read once.
+ */
+class WalkWatcher {
+    /**
+     * Maximal latency of a batch in debounce delays.
+     */
+    private static final int MAX_BATCH_DELAYS = 10;
+
+    private final FileHasher hasher;
+    private final HashCache cache;
+    private final WalkMetrics metrics;
+    private final HashWriter.Format format;
+    private final int digestLength;
+    private final int threads;
+    private final long debounceMillis;
+
+    private final List<String> lines = new ArrayList<>();
+    private final Map<String, HashResult> results = new HashMap<>();
+    /**
+     * Input lines by watched directory and file name in it.
+     */
+    private final Map<Path, Map<Path, List<String>>> watched = new HashMap<>();
+    private ExecutorService pool;
+
+    WalkWatcher(final WalkOptions options, final FileHasher hasher, final HashCache cache, final WalkMetrics metrics, final int digestLength) {
+        this.hasher = hasher;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.format = options.format;
+        this.digestLength = digestLength;
+        this.threads = options.threads;
+        this.debounceMillis = options.watchDelay;
+    }
+
+    /**
+     * Hashes files listed in the input and rehashes them on changes until interrupted.
+     *
+     * @param reader input lines.
+     * @param output output file.
+     * @throws IOException   if the input can't be read, or directories can't be watched.
+     * @throws WalkException if the output or the cache can't be written.
+     */
+    void watch(final BufferedReader reader, final Path output) throws IOException, WalkException {
+        try (final WatchService service = FileSystems.getDefault().newWatchService()) {
+            final Map<WatchKey, Path> keys = new HashMap<>();
+            String pathStr;
+            while ((pathStr = reader.readLine()) != null) {
+                lines.add(pathStr);
+                register(service, keys, pathStr);
+            }
+            pool = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+            rehash(new LinkedHashSet<>(lines));
+            write(output);
+
+            final long debounce = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+            while (!Thread.currentThread().isInterrupted()) {
+                final Set<String> changed = new LinkedHashSet<>();
+                WatchKey key = service.take();
+                final long deadline = System.nanoTime() + MAX_BATCH_DELAYS * debounce;
+                while (key != null) {
+                    collect(key, keys.get(key), changed);
+                    final long left = deadline - System.nanoTime();
+                    key = left > 0 ? service.poll(Math.min(debounce, left), TimeUnit.NANOSECONDS) : null;
+                }
+                if (!changed.isEmpty()) {
+                    rehash(changed);
+                    write(output);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void register(final WatchService service, final Map<WatchKey, Path> keys, final String pathStr) throws IOException {
+        final Path path;
+        try {
+            path = Path.of(pathStr).toAbsolutePath().normalize();
+        } catch (final InvalidPathException e) {
+            return;
+        }
+        final Path dir = path.getParent();
+        if (dir == null || path.getFileName() == null || !Files.isDirectory(dir)) {
+            return;
+        }
+        if (!watched.containsKey(dir)) {
+            final WatchKey key = dir.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            keys.put(key, dir);
+        }
+        watched.computeIfAbsent(dir, d -> new HashMap<>())
+                .computeIfAbsent(path.getFileName(), name -> new ArrayList<>())
+                .add(pathStr);
+    }
+
+    private void collect(final WatchKey key, final Path dir, final Set<String> changed) {
+        final Map<Path, List<String>> files = watched.getOrDefault(dir, Map.of());
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                files.values().forEach(changed::addAll);
+            } else {
+                final List<String> paths = files.get((Path) event.context());
+                if (paths != null) {
+                    changed.addAll(paths);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void rehash(final Set<String> paths) throws InterruptedException, WalkException {
+        if (pool == null) {
+            for (final String path : paths) {
+                metrics.submitted();
+                completed(path, hasher.hash(path));
+            }
+            return;
+        }
+
+        final Map<String, Future<HashResult>> futures = new LinkedHashMap<>();
+        try {
+            for (final String path : paths) {
+                metrics.submitted();
+                futures.put(path, pool.submit(() -> hasher.hash(path)));
+            }
+            for (final Map.Entry<String, Future<HashResult>> entry : futures.entrySet()) {
+                completed(entry.getKey(), entry.getValue().get());
+            }
+        } catch (final ExecutionException e) {
+            throw new WalkException("Error: can't hash file: " + e.getCause().getMessage());
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void completed(final String path, final HashResult result) {
+        results.put(path, result);
+        metrics.completed();
+        metrics.written(result);
+    }
+
+    private void write(final Path output) throws WalkException {
+        final Path dir = output.toAbsolutePath().getParent();
+        try {
+            final Path temp = Files.createTempFile(dir, output.getFileName().toString(), ".tmp");
+            try {
+                try (final OutputStream out = Files.newOutputStream(temp);
+                     // Unchanged records are rewritten, so they are not counted again
+                     final HashWriter writer = HashWriter.create(format, out, digestLength, new WalkMetrics())) {
+                    for (final String line : lines) {
+                        writer.write(results.get(line));
+                    }
+                }
+                try {
+                    Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (final IOException e) {
+            throw new WalkException("Error: can't write output file: " + e.getMessage());
+        }
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (final IOException e) {
+                throw new WalkException("Error: can't write cache file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package info.kgeorgiy.ja.pologov.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Non-cryptographic 64-bit <a href="https://github.com/Cyan4973/xxHash">xxHash</a> (XXH64)
+ * with zero seed, exposed as a {@link MessageDigest}.
+ * <p>
+ * Digest is the canonical (big-endian) representation of the hash.
+ * Direct buffers are hashed in place, without copying to a temporary array.
+ */
+class XxHash64 extends MessageDigest {
+    static final String NAME = "XXH64";
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] stripe = new byte[STRIPE];
+    private int stripeSize;
+    private long total;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    XxHash64() {
+        super(NAME);
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return Long.BYTES;
+    }
+
+    @Override
+    protected void engineReset() {
+        stripeSize = 0;
+        total = 0;
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0;
+        v4 = -P1;
+    }
+
+    @Override
+    protected void engineUpdate(final byte input) {
+        total++;
+        stripe[stripeSize++] = input;
+        if (stripeSize == STRIPE) {
+            consumeStripe(stripe, 0);
+            stripeSize = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(final byte[] input, int offset, int length) {
+        total += length;
+        if (stripeSize > 0) {
+            final int fill = Math.min(length, STRIPE - stripeSize);
+            System.arraycopy(input, offset, stripe, stripeSize, fill);
+            stripeSize += fill;
+            offset += fill;
+            length -= fill;
+            if (stripeSize < STRIPE) {
+                return;
+            }
+            consumeStripe(stripe, 0);
+            stripeSize = 0;
+        }
+        for (; length >= STRIPE; offset += STRIPE, length -= STRIPE) {
+            consumeStripe(input, offset);
+        }
+        System.arraycopy(input, offset, stripe, 0, length);
+        stripeSize = length;
+    }
+
+    @Override
+    protected void engineUpdate(final ByteBuffer input) {
+        if (input.hasArray()) {
+            final int length = input.remaining();
+            engineUpdate(input.array(), input.arrayOffset() + input.position(), length);
+            input.position(input.position() + length);
+            return;
+        }
+        while (stripeSize > 0 && input.hasRemaining()) {
+            engineUpdate(input.get());
+        }
+        final ByteBuffer buffer = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final int stripes = buffer.remaining() / STRIPE * STRIPE;
+        for (int i = 0; i < stripes; i += STRIPE) {
+            v1 = round(v1, buffer.getLong(i));
+            v2 = round(v2, buffer.getLong(i + 8));
+            v3 = round(v3, buffer.getLong(i + 16));
+            v4 = round(v4, buffer.getLong(i + 24));
+        }
+        total += stripes;
+        input.position(input.position() + stripes);
+        while (input.hasRemaining()) {
+            engineUpdate(input.get());
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (total >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = P5;
+        }
+        hash += total;
+
+        int i = 0;
+        for (; i + Long.BYTES <= stripeSize; i += Long.BYTES) {
+            hash ^= round(0, (long) LONG.get(stripe, i));
+            hash = Long.rotateLeft(hash, 27) * P1 + P4;
+        }
+        if (i + Integer.BYTES <= stripeSize) {
+            hash ^= ((int) INT.get(stripe, i) & 0xFFFFFFFFL) * P1;
+            hash = Long.rotateLeft(hash, 23) * P2 + P3;
+            i += Integer.BYTES;
+        }
+        for (; i < stripeSize; i++) {
+            hash ^= (stripe[i] & 0xFF) * P5;
+            hash = Long.rotateLeft(hash, 11) * P1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        hash ^= hash >>> 32;
+
+        engineReset();
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+
+    private void consumeStripe(final byte[] input, final int offset) {
+        v1 = round(v1, (long) LONG.get(input, offset));
+        v2 = round(v2, (long) LONG.get(input, offset + 8));
+        v3 = round(v3, (long) LONG.get(input, offset + 16));
+        v4 = round(v4, (long) LONG.get(input, offset + 24));
+    }
+
+    private static long round(final long acc, final long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(final long hash, final long acc) {
+        return (hash ^ round(0, acc)) * P1 + P4;
+    }
+}